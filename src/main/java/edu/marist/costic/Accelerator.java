@@ -0,0 +1,495 @@
+package edu.marist.costic;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finds the states of a DFA where matching can take a shortcut.
+ *
+ * Once the DFA reaches a state from which every input is accepted, or from which no input can be accepted anymore,
+ * the result is known without reading the rest of the input. A state that stays put on most symbols,
+ * like the states of a (a+b+...)* segment, can skip over them without looking up every transition,
+ * by checking the characters against a bit mask of the symbols that stay.
+ * Characters outside of the alphabet lead to the dead state in all but complement DFAs,
+ * so the mask is checked for every character instead of searching ahead for the few symbols that leave.
+ *
+ * Subset construction doesn't minimize the DFA, so a segment like (a+b)* is often a few equivalent states
+ * that move between each other. Equivalent states are found first, and moving between them counts as staying put.
+ *
+ * Tables outside of the heap are not analysed, since the analysis keeps arrays of its own for every state,
+ * which would grow the heap with the DFA after all.
+ */
+final class Accelerator {
+
+    /** The state has no shortcut. */
+    static final byte NONE = 0;
+    /** Every input from the state on is accepted. */
+    static final byte ACCEPT = 1;
+    /** No input from the state on is accepted. */
+    static final byte REJECT = 2;
+    /** The state can skip the characters in its bit mask. */
+    static final byte SPAN = 3;
+
+    private static final int MAX_BYTE = 0xFF;
+    // characters below this have a bit in the masks of SPAN states
+    private static final int MASK_SIZE = MAX_BYTE + 1;
+    private static final int WORD_SHIFT = 6;
+    // equivalent states aren't looked for in tables larger than this
+    private static final long MAX_PARTITION_SIZE = 16 * 1024 * 1024;
+
+    // the shortcut of each state, or null if the table isn't analysed and no state has one
+    private final byte[] kinds;
+
+    // for SPAN states, bit c is 1 if character c stays in the state
+    private final long[][] stayMasks;
+
+    /**
+     * Analyses the transition table of a DFA.
+     * @param table the transition table.
+     * @param symbols the alphabet symbols in the order of their symbol classes.
+     */
+    Accelerator(TransitionTable table, char[] symbols) {
+        if (table instanceof BufferTransitionTable) {
+            kinds = null;
+            stayMasks = null;
+            return;
+        }
+
+        int states = table.getStateCount();
+        kinds = new byte[states];
+        stayMasks = new long[states][];
+
+        boolean[] live = findLive(table);
+        boolean[] sureAccept = findSureAccept(table);
+        int[] blocks = findEquivalent(table);
+        for (int state = 0; state < states; state++) {
+            if (!live[state]) {
+                kinds[state] = REJECT;
+            } else if (sureAccept[state]) {
+                kinds[state] = ACCEPT;
+            } else {
+                findSpan(table, symbols, blocks, state);
+            }
+        }
+    }
+
+    /**
+     * Gets the shortcut a state can take.
+     * @param state the state.
+     * @return NONE, ACCEPT, REJECT or SPAN.
+     */
+    byte kind(int state) {
+        return kinds == null ? NONE : kinds[state];
+    }
+
+    /**
+     * Skips over the characters a SPAN state stays put on.
+     * @param state the state.
+     * @param input the input.
+     * @param from the index of the next character.
+     * @param end the end of the input.
+     * @return the index of the next character that leaves the state, or end if there is none.
+     */
+    int skip(int state, CharSequence input, int from, int end) {
+        long[] mask = stayMasks[state];
+        int i = from;
+        while (i < end) {
+            char c = input.charAt(i);
+            if (c >= MASK_SIZE || (mask[c >>> WORD_SHIFT] & (1L << c)) == 0) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skips over the bytes a SPAN state stays put on.
+     * @param state the state.
+     * @param input the input.
+     * @param from the index of the next byte.
+     * @param end the end of the input.
+     * @return the index of the next character that leaves the state, or end if there is none.
+     */
+    int skip(int state, byte[] input, int from, int end) {
+        long[] mask = stayMasks[state];
+        int i = from;
+        while (i < end) {
+            int c = input[i] & MAX_BYTE;
+            if ((mask[c >>> WORD_SHIFT] & (1L << c)) == 0) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skips over the bytes a SPAN state stays put on.
+     * @param state the state.
+     * @param input the input.
+     * @param from the index of the next byte.
+     * @param end the end of the input.
+     * @return the index of the next character that leaves the state, or end if there is none.
+     */
+    int skip(int state, ByteBuffer input, int from, int end) {
+        if (input.hasArray()) {
+            int arrayOffset = input.arrayOffset();
+            return skip(state, input.array(), arrayOffset + from, arrayOffset + end) - arrayOffset;
+        }
+
+        long[] mask = stayMasks[state];
+        for (int i = from; i < end; i++) {
+            int c = input.get(i) & MAX_BYTE;
+            if ((mask[c >>> WORD_SHIFT] & (1L << c)) == 0) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Marks a state as SPAN if it stays put on most of the characters that fit in a byte.
+     * @param table the transition table.
+     * @param symbols the alphabet symbols.
+     * @param blocks the block of equivalent states each state belongs to.
+     * @param state the state.
+     */
+    private void findSpan(TransitionTable table, char[] symbols, int[] blocks, int state) {
+        int otherClass = table.getClassCount() - 1;
+        boolean[] stays = new boolean[table.getClassCount()];
+        int stayCount = 0;
+        for (int symbolClass = 0; symbolClass < stays.length; symbolClass++) {
+            int dest = table.get(state, symbolClass);
+            stays[symbolClass] = dest != -1 && blocks[dest] == blocks[state];
+            if (stays[symbolClass]) {
+                stayCount++;
+            }
+        }
+
+        // a mask only pays off when most characters stay, otherwise each one is looked up anyway
+        if (stayCount * 2 < stays.length) {
+            return;
+        }
+        kinds[state] = SPAN;
+        long[] mask = new long[MASK_SIZE / Long.SIZE];
+        for (int c = 0; c < MASK_SIZE; c++) {
+            int symbolClass = Arrays.binarySearch(symbols, (char) c);
+            if (stays[symbolClass >= 0 ? symbolClass : otherClass]) {
+                mask[c >>> WORD_SHIFT] |= 1L << c;
+            }
+        }
+        stayMasks[state] = mask;
+    }
+
+    /**
+     * Finds the equivalent states, which accept exactly the same inputs, with Hopcroft's partition refinement.
+     * Starting from the end states and the others, blocks are split by the states going into another block on some
+     * symbol class. Only the smaller half of each split has to be used to split again, so every state is used
+     * O(log n) times and long chains of states, like the ones of a{n}, don't need n rounds.
+     * The dead state takes part as an extra state that goes to itself.
+     * @param table the transition table.
+     * @return the block of each state, where every state is its own block if the table is too large to check.
+     */
+    private static int[] findEquivalent(TransitionTable table) {
+        int states = table.getStateCount();
+        int classCount = table.getClassCount();
+        if ((long) (states + 1) * classCount > MAX_PARTITION_SIZE) {
+            int[] blocks = new int[states];
+            for (int state = 0; state < states; state++) {
+                blocks[state] = state;
+            }
+            return blocks;
+        }
+
+        int dead = states;
+        int size = states + 1;
+        // the sources of each destination on each symbol class, row by row for each class
+        int[] sourceStarts = new int[classCount * size + 1];
+        for (int state = 0; state < size; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                sourceStarts[symbolClass * size + destination(table, state, symbolClass, dead) + 1]++;
+            }
+        }
+        for (int i = 0; i < classCount * size; i++) {
+            sourceStarts[i + 1] += sourceStarts[i];
+        }
+        int[] sources = new int[sourceStarts[classCount * size]];
+        int[] filled = Arrays.copyOf(sourceStarts, classCount * size);
+        for (int state = 0; state < size; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                sources[filled[symbolClass * size + destination(table, state, symbolClass, dead)]++] = state;
+            }
+        }
+
+        Partition partition = new Partition(size);
+        for (int state = 0; state < states; state++) {
+            if (table.isAccepting(state)) {
+                partition.mark(state);
+            }
+        }
+        partition.splitMarked();
+
+        Deque<Integer> pending = new ArrayDeque<Integer>();
+        boolean[] isPending = new boolean[size];
+        for (int block = 0; block < partition.blockCount; block++) {
+            pending.add(block);
+            isPending[block] = true;
+        }
+        while (!pending.isEmpty()) {
+            int splitter = pending.remove();
+            isPending[splitter] = false;
+            // the splitter itself can be split while it is used, so its states are taken as they are now
+            int[] members = partition.members(splitter);
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                markSources(partition, members, sourceStarts, sources, symbolClass * size);
+                for (int[] split : partition.splitMarked()) {
+                    int block = split[0];
+                    int added = split[1];
+                    // once a block is split, either half splits the others like the whole block does
+                    if (isPending[block]) {
+                        pending.add(added);
+                        isPending[added] = true;
+                    } else {
+                        int smaller = partition.size(added) <= partition.size(block) ? added : block;
+                        pending.add(smaller);
+                        isPending[smaller] = true;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(partition.blockOf, states);
+    }
+
+    /**
+     * Marks the states going into any of a set of states on one symbol class.
+     * @param partition the partition to mark the states in.
+     * @param members the set of states.
+     * @param sourceStarts where the sources of each destination start in sources.
+     * @param sources the sources of every destination.
+     * @param row the first row of the symbol class in sourceStarts.
+     */
+    private static void markSources(Partition partition, int[] members, int[] sourceStarts, int[] sources, int row) {
+        for (int member : members) {
+            for (int i = sourceStarts[row + member]; i < sourceStarts[row + member + 1]; i++) {
+                partition.mark(sources[i]);
+            }
+        }
+    }
+
+    /**
+     * Gets where a state goes on a symbol class, with the dead state as a real state.
+     * @param table the transition table.
+     * @param state the state, or the dead state.
+     * @param symbolClass the symbol class.
+     * @param dead the number standing for the dead state.
+     * @return the destination, or the dead state.
+     */
+    private static int destination(TransitionTable table, int state, int symbolClass, int dead) {
+        if (state == dead) {
+            return dead;
+        }
+        int dest = table.get(state, symbolClass);
+        return dest == -1 ? dead : dest;
+    }
+
+    /**
+     * Finds the states from which an end state can be reached.
+     * @param table the transition table.
+     * @return true for each live state.
+     */
+    private static boolean[] findLive(TransitionTable table) {
+        boolean[] live = new boolean[table.getStateCount()];
+        for (int state = 0; state < live.length; state++) {
+            live[state] = table.isAccepting(state);
+        }
+        spreadBackwards(table, live);
+        return live;
+    }
+
+    /**
+     * Finds the states from which every input is accepted: states that can only reach end states,
+     * and never the dead state.
+     * @param table the transition table.
+     * @return true for each state that always accepts.
+     */
+    private static boolean[] findSureAccept(TransitionTable table) {
+        boolean[] canReject = new boolean[table.getStateCount()];
+        for (int state = 0; state < canReject.length; state++) {
+            canReject[state] = !table.isAccepting(state);
+            for (int symbolClass = 0; symbolClass < table.getClassCount(); symbolClass++) {
+                if (table.get(state, symbolClass) == -1) {
+                    canReject[state] = true;
+                }
+            }
+        }
+        spreadBackwards(table, canReject);
+
+        boolean[] sureAccept = new boolean[canReject.length];
+        for (int state = 0; state < canReject.length; state++) {
+            sureAccept[state] = !canReject[state];
+        }
+        return sureAccept;
+    }
+
+    /**
+     * Marks every state that has a path to an already marked state.
+     * @param table the transition table.
+     * @param marked the marked states, updated in place.
+     */
+    private static void spreadBackwards(TransitionTable table, boolean[] marked) {
+        int states = table.getStateCount();
+        int classCount = table.getClassCount();
+
+        // the transitions reversed, as the sources of each destination in one array
+        int[] sourceStarts = new int[states + 1];
+        for (int state = 0; state < states; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                int dest = table.get(state, symbolClass);
+                if (dest != -1) {
+                    sourceStarts[dest + 1]++;
+                }
+            }
+        }
+        for (int state = 0; state < states; state++) {
+            sourceStarts[state + 1] += sourceStarts[state];
+        }
+        int[] sources = new int[sourceStarts[states]];
+        int[] filled = Arrays.copyOf(sourceStarts, states);
+        for (int state = 0; state < states; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                int dest = table.get(state, symbolClass);
+                if (dest != -1) {
+                    sources[filled[dest]++] = state;
+                }
+            }
+        }
+
+        Deque<Integer> pending = new ArrayDeque<Integer>();
+        for (int state = 0; state < states; state++) {
+            if (marked[state]) {
+                pending.add(state);
+            }
+        }
+        while (!pending.isEmpty()) {
+            int state = pending.remove();
+            for (int i = sourceStarts[state]; i < sourceStarts[state + 1]; i++) {
+                if (!marked[sources[i]]) {
+                    marked[sources[i]] = true;
+                    pending.add(sources[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A partition of states into blocks, where each block is a range of one array of the states,
+     * so marked states are split off by moving them to the front of their block.
+     */
+    private static final class Partition {
+
+        // the states ordered by block, and the position of each state in it
+        private final int[] elements;
+        private final int[] positions;
+        private final int[] blockOf;
+        // the range of each block in elements, and how many of its first states are marked
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] marked;
+        private int blockCount;
+
+        // the blocks with marked states
+        private final int[] touched;
+        private int touchedCount;
+
+        /**
+         * Constructs a Partition with every state in one block.
+         * @param size the number of states.
+         */
+        Partition(int size) {
+            elements = new int[size];
+            positions = new int[size];
+            blockOf = new int[size];
+            starts = new int[size];
+            ends = new int[size];
+            marked = new int[size];
+            touched = new int[size];
+            for (int state = 0; state < size; state++) {
+                elements[state] = state;
+                positions[state] = state;
+            }
+            ends[0] = size;
+            blockCount = 1;
+        }
+
+        /**
+         * Marks a state by moving it to the marked front of its block.
+         * @param state the state.
+         */
+        void mark(int state) {
+            int block = blockOf[state];
+            int target = starts[block] + marked[block];
+            int position = positions[state];
+            if (position < target) {
+                return;
+            }
+            if (marked[block] == 0) {
+                touched[touchedCount++] = block;
+            }
+            int other = elements[target];
+            elements[target] = state;
+            positions[state] = target;
+            elements[position] = other;
+            positions[other] = position;
+            marked[block]++;
+        }
+
+        /**
+         * Splits the marked states of every block off into a block of their own, unless the whole block is marked.
+         * @return the original and the new block of each split.
+         */
+        List<int[]> splitMarked() {
+            List<int[]> splits = new ArrayList<int[]>();
+            for (int i = 0; i < touchedCount; i++) {
+                int block = touched[i];
+                int count = marked[block];
+                marked[block] = 0;
+                if (count == ends[block] - starts[block]) {
+                    continue;
+                }
+                int added = blockCount++;
+                starts[added] = starts[block];
+                ends[added] = starts[block] + count;
+                starts[block] = ends[added];
+                for (int position = starts[added]; position < ends[added]; position++) {
+                    blockOf[elements[position]] = added;
+                }
+                splits.add(new int[] {block, added});
+            }
+            touchedCount = 0;
+            return splits;
+        }
+
+        /**
+         * Gets the states of a block.
+         * @param block the block.
+         * @return the states.
+         */
+        int[] members(int block) {
+            return Arrays.copyOfRange(elements, starts[block], ends[block]);
+        }
+
+        /**
+         * Gets the number of states in a block.
+         * @param block the block.
+         * @return the size.
+         */
+        int size(int block) {
+            return ends[block] - starts[block];
+        }
+    }
+}
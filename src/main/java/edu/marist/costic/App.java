@@ -1,9 +1,24 @@
 package edu.marist.costic;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Main app class.
  */
 public final class App {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
     /** App class constructor. */
     protected App() {
     }
@@ -13,32 +28,258 @@ public final class App {
      * @param args The arguments of the program.
      */
     public static void main(final String[] args) {
+        // accepted records are written through a large buffer instead of being flushed at every newline
+        System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out),
+                OUTPUT_BUFFER_SIZE), false));
         int returnCode = 0;
         Utils utils = new Utils();
 
         utils.processArgs(args);
 
+        if (utils.isIndexCommand()) {
+            utils.log("Indexing " + utils.getInputFile() + "...");
+            try {
+                int blocks = TrigramIndex.build(utils.getInputFile(), utils.getRecordDelimiter(), utils.getIndexFile());
+                utils.log("Wrote " + blocks + " blocks to " + utils.getIndexFile());
+            } catch (IOException e) {
+                Utils.error("Error building index: " + e.getMessage());
+            }
+            Utils.exit(returnCode);
+        }
+
         utils.log("Creating NFA...");
-        NFA nfa = new NFA(utils.getRegex(), utils.getAlphabet());
+        NFA nfa = createNFA(utils, utils.getRegex());
         utils.log("Converting NFA to DOT format...");
         utils.writeNFA(nfa.convertToDot());
 
-        utils.log("Creating DFA...");
-        DFA dfa = new DFA(nfa, utils.getAlphabet());
-        utils.log("Converting DFA to DOT format...");
-        utils.writeDFA(dfa.convertToDot());
+        Matcher matcher = createMatcher(utils, nfa);
 
         utils.log("Processing Input...");
         utils.log("");
 
         utils.log("Accepted Strings:");
 
-        for (String s : utils.getInput()) {
-            if (dfa.accepts(s)) {
-                System.out.println(s);
+        if (utils.isFollow()) {
+            new FileFollower(utils.getInputFile(), matcher, utils).follow();
+        } else if (utils.getIndexFile() != null) {
+            try {
+                searchIndex(utils, matcher);
+            } catch (IOException e) {
+                Utils.error("Error reading indexed input file: " + e.getMessage());
+            }
+        } else if (utils.isCompressed()) {
+            try {
+                new DecompressionPipeline(utils.getInputFile()).run(
+                        new RecordSplitter(utils.getRecordDelimiter(), record -> {
+                            if (matcher.matches(record)) {
+                                utils.printRecord(record);
+                            }
+                        }));
+            } catch (IOException e) {
+                Utils.error("Error decompressing input file: " + e.getMessage());
+            }
+        } else {
+            for (String s : utils.getInput()) {
+                if (matcher.matches(s)) {
+                    utils.printRecord(s);
+                }
+            }
+        }
+
+        Utils.exit(returnCode);
+    }
+
+    /**
+     * Creates the NFA for a regex, exiting with an error if the regex is invalid.
+     * @param utils the utils holding the input alphabet.
+     * @param regex the regex string.
+     * @return the NFA.
+     */
+    private static NFA createNFA(Utils utils, String regex) {
+        // a streamed file isn't read yet, so the alphabet comes from the regex and the space instead
+        return createNFA(utils, regex, utils.isFollow() || utils.isCompressed() || utils.getIndexFile() != null);
+    }
+
+    /**
+     * Creates the NFA for a regex, exiting with an error if the regex is invalid.
+     * @param utils the utils holding the input alphabet.
+     * @param regex the regex string.
+     * @param openAlphabet true to take the alphabet from the regex and the space instead of the input.
+     * @return the NFA.
+     */
+    private static NFA createNFA(Utils utils, String regex, boolean openAlphabet) {
+        NFA nfa = null;
+        try {
+            if (openAlphabet) {
+                nfa = createStreamedNFA(regex, utils.getMaxStates());
+            } else {
+                nfa = new NFA(regex, utils.getAlphabet(), utils.getMaxStates());
+            }
+        } catch (InvalidRegexException e) {
+            Utils.error("Error parsing regex " + regex + ": " + e.getMessage());
+        }
+        utils.log("Simplified the syntax tree of " + regex + " from " + nfa.getParsedNodeCount() + " to "
+                + nfa.getOptimizedNodeCount() + " nodes: " + nfa.getSyntaxTree());
+        return nfa;
+    }
+
+    /**
+     * Creates the NFA for a regex over the symbols of the regex and the space, for input that isn't read up front.
+     * The space can't be ruled out of such input, so it is in the alphabet as it is for a plain file holding one,
+     * and the same records are accepted however the file is read.
+     * @param regex the regex string.
+     * @param maxStates the most states counted repetitions may expand the NFA to.
+     * @return the NFA.
+     * @throws InvalidRegexException if the regex can't be parsed or would have more than maxStates states.
+     */
+    static NFA createStreamedNFA(String regex, int maxStates) throws InvalidRegexException {
+        Set<Character> alphabet = new HashSet<Character>();
+        alphabet.add(StateSymbolPair.EPSILON);
+        return new NFA(regex, alphabet, true, maxStates);
+    }
+
+    /**
+     * Matches only the blocks of the input file that the trigram index says may hold accepted records.
+     * If the index doesn't match the file, the whole file is read instead.
+     * @param utils the utils holding the input and index files.
+     * @param matcher the compiled matcher.
+     * @throws IOException if a file can't be read.
+     */
+    private static void searchIndex(Utils utils, Matcher matcher) throws IOException {
+        RecordSplitter splitter = new RecordSplitter(utils.getRecordDelimiter(), record -> {
+            if (matcher.matches(record)) {
+                utils.printRecord(record);
+            }
+        });
+
+        TrigramIndex index = TrigramIndex.open(utils.getIndexFile(), utils.getInputFile(), utils.getRecordDelimiter());
+        if (index == null) {
+            utils.log("Index is missing or out of date, reading the whole file");
+            try (InputStream in = new FileInputStream(utils.getInputFile())) {
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    splitter.feed(buffer, 0, read);
+                }
+            }
+            splitter.flush();
+            return;
+        }
+
+        // a record has to match one of the patterns and all of the and patterns, the not patterns rule nothing out
+        TrigramQuery query = TrigramQuery.none();
+        for (String pattern : utils.getPatterns()) {
+            query = query.or(TrigramQuery.fromRegex(pattern));
+        }
+        for (String pattern : utils.getAndPatterns()) {
+            query = query.and(TrigramQuery.fromRegex(pattern));
+        }
+        BitSet blocks = query.candidates(index);
+        utils.log("Trigram query: " + query);
+        utils.log("Reading " + blocks.cardinality() + " of " + index.getBlockCount() + " blocks");
+
+        index.readBlocks(utils.getInputFile(), blocks, splitter);
+    }
+
+    /**
+     * Creates the matcher for the regexes on the requested engine. The DFA is only built if the engine needs it
+     * or it is written to a dot file, since the Glushkov automaton stands in for it without a subset construction.
+     * @param utils the utils holding the regexes and the requested engine.
+     * @param nfa the NFA of the main regex.
+     * @return the matcher.
+     */
+    private static Matcher createMatcher(Utils utils, NFA nfa) {
+        boolean combined = utils.getPatterns().size() > 1
+                || !utils.getAndPatterns().isEmpty()
+                || !utils.getNotPatterns().isEmpty();
+
+        // the Glushkov automaton can only stand in for the DFA of a single regex
+        Matcher shiftAnd = null;
+        if (!combined && utils.getEngine() == Engine.SHIFT_AND) {
+            shiftAnd = ShiftAndMatcher.compile(nfa);
+        }
+        if (shiftAnd != null && !utils.isDFADotRequested()) {
+            utils.log("Skipping the DFA, the " + utils.getEngine() + " engine matches the regex without it");
+            return shiftAnd;
+        }
+
+        utils.log("Creating DFA...");
+        DFA dfa = createDFA(utils, nfa, combined);
+        utils.log("Converting DFA to DOT format...");
+        utils.writeDFA(dfa.convertToDot());
+        if (shiftAnd != null) {
+            return shiftAnd;
+        }
+
+        utils.log("Selecting " + utils.getEngine() + " engine...");
+        return EngineSelector.select(combined ? null : nfa, dfa, utils.getEngine(), utils.getInput());
+    }
+
+    /**
+     * Creates the DFA that matches the input, combining every regex into one so the input is only read once.
+     * @param utils the utils holding the regexes and where the transition table is stored.
+     * @param nfa the NFA of the main regex.
+     * @param combined true if there is more than the main regex.
+     * @return the DFA.
+     */
+    private static DFA createDFA(Utils utils, NFA nfa, boolean combined) {
+        DFA dfa = null;
+        if (combined) {
+            if (utils.getTableFile() != null) {
+                Utils.error("A DFA table file can only be used with a single regex");
+            }
+
+            dfa = new DFA(nfa, nfa.getAlphabet());
+            for (String pattern : utils.getPatterns().subList(1, utils.getPatterns().size())) {
+                utils.log("Adding union with " + pattern + "...");
+                dfa = dfa.union(createDFA(utils, pattern));
+            }
+            for (String pattern : utils.getAndPatterns()) {
+                utils.log("Adding intersection with " + pattern + "...");
+                dfa = dfa.intersection(createOperandDFA(utils, pattern));
+            }
+            for (String pattern : utils.getNotPatterns()) {
+                utils.log("Adding difference with " + pattern + "...");
+                dfa = dfa.difference(createOperandDFA(utils, pattern));
+            }
+            if (utils.isOffHeap()) {
+                dfa = dfa.toOffHeap();
             }
+        } else if (utils.getTableFile() != null) {
+            try {
+                dfa = new DFA(nfa, nfa.getAlphabet(), utils.getTableFile());
+            } catch (IOException e) {
+                Utils.error("Error mapping DFA table file: " + e.getMessage());
+            }
+        } else {
+            dfa = new DFA(nfa, nfa.getAlphabet(), utils.isOffHeap());
         }
+        return dfa;
+    }
+
+    /**
+     * Creates the DFA for a regex on the heap, exiting with an error if the regex is invalid.
+     * @param utils the utils holding the input alphabet.
+     * @param regex the regex string.
+     * @return the DFA.
+     */
+    private static DFA createDFA(Utils utils, String regex) {
+        NFA nfa = createNFA(utils, regex);
+        return new DFA(nfa, nfa.getAlphabet());
+    }
 
-        System.exit(returnCode);
+    /**
+     * Creates the DFA for an --and or --not regex over its own alphabet and the space, exiting with an error if the
+     * regex is invalid. These regexes only narrow down the others, so a symbol that isn't in the input just never
+     * matches, and the product construction treats characters outside of either alphabet as the shared other class.
+     * The space is always in the alphabet, so a space in the input matches the same way as in the main regex
+     * instead of falling into the other class and ruling out every record that holds one.
+     * @param utils the utils holding the maximum number of NFA states.
+     * @param regex the regex string.
+     * @return the DFA.
+     */
+    private static DFA createOperandDFA(Utils utils, String regex) {
+        NFA nfa = createNFA(utils, regex, true);
+        return new DFA(nfa, nfa.getAlphabet());
     }
 }
@@ -0,0 +1,264 @@
+package edu.marist.costic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A transition table outside of the heap, in a direct or memory mapped buffer.
+ * The garbage collector never looks inside the buffer, and a mapped table file can be shared between processes.
+ *
+ * A table file holds native order ints: a magic number, a format version, the regex length and characters,
+ * the alphabet size and symbols, the state and symbol class counts, the transitions row by row,
+ * and finally a bit set of end states.
+ */
+final class BufferTransitionTable extends TransitionTable {
+
+    private static final int MAGIC = 0x47524559;
+    private static final int VERSION = 1;
+    // magic, version, regex length and alphabet size
+    private static final int HEADER_FIELDS = 4;
+    // the state and symbol class counts following the header
+    private static final int COUNT_FIELDS = 2;
+
+    private final int states;
+    private final int classCount;
+
+    private final IntBuffer transitions;
+
+    // bit s of the set is 1 if state s is an end state
+    private final IntBuffer acceptingBits;
+
+    /**
+     * Constructs a BufferTransitionTable over the transitions and end state bits in a buffer.
+     * @param states the number of states.
+     * @param classCount the number of symbol classes.
+     * @param table the transitions followed by the end state bits.
+     */
+    private BufferTransitionTable(int states, int classCount, IntBuffer table) {
+        this.states = states;
+        this.classCount = classCount;
+
+        int transitionCount = states * classCount;
+        table.limit(table.position() + transitionCount);
+        transitions = table.slice();
+        table.position(table.limit());
+        table.limit(table.position() + acceptingWords(states));
+        acceptingBits = table.slice();
+    }
+
+    /**
+     * Copies a table into a new direct buffer.
+     * @param source the table to copy.
+     * @return the off heap table.
+     * @throws IllegalArgumentException if the table doesn't fit in a buffer.
+     */
+    static BufferTransitionTable allocateDirect(TransitionTable source) {
+        int states = source.getStateCount();
+        int classCount = source.getClassCount();
+        long bytes = tableSize(states, classCount) * Integer.BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Transition table of " + states + " states is too large for a buffer");
+        }
+
+        IntBuffer table = ByteBuffer.allocateDirect((int) bytes)
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        copy(source, table);
+        table.rewind();
+        return new BufferTransitionTable(states, classCount, table);
+    }
+
+    /**
+     * Maps a table file, if it holds the table for a regex over an alphabet.
+     * @param file the table file.
+     * @param regex the regex the table must have been built from.
+     * @param symbols the alphabet symbols the table must have been built with.
+     * @return the mapped table, or null if the file doesn't exist or holds a different table.
+     * @throws IOException if the file can't be read.
+     */
+    static BufferTransitionTable map(File file, String regex, char[] symbols) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer table = mapped.order(ByteOrder.nativeOrder()).asIntBuffer();
+
+            if (table.remaining() < headerSize(regex, symbols) + COUNT_FIELDS
+                    || !headerMatches(table, regex, symbols)) {
+                return null;
+            }
+
+            int states = table.get();
+            int classCount = table.get();
+            if (classCount != symbols.length + 1 || table.remaining() != tableSize(states, classCount)) {
+                return null;
+            }
+            return new BufferTransitionTable(states, classCount, table);
+        }
+    }
+
+    /**
+     * Writes a table to a table file and maps it. The file is replaced atomically,
+     * so other processes never map a partly written table.
+     * @param source the table to write.
+     * @param regex the regex the table was built from.
+     * @param symbols the alphabet symbols the table was built with.
+     * @param file the table file.
+     * @return the mapped table.
+     * @throws IOException if the file can't be written or the table is too large to be mapped.
+     */
+    static BufferTransitionTable write(TransitionTable source, String regex, char[] symbols, File file)
+            throws IOException {
+        int states = source.getStateCount();
+        int classCount = source.getClassCount();
+        long bytes = (headerSize(regex, symbols) + COUNT_FIELDS + tableSize(states, classCount)) * Integer.BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Transition table of " + states + " states is too large to be mapped");
+        }
+
+        Path target = file.getAbsoluteFile().toPath();
+        // unlike Files.createTempFile, this keeps the default permissions so other users can map the table too
+        Path temporary = target.resolveSibling(file.getName() + "." + System.nanoTime() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            IntBuffer table = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+
+            table.put(MAGIC);
+            table.put(VERSION);
+            table.put(regex.length());
+            for (int i = 0; i < regex.length(); i++) {
+                table.put(regex.charAt(i));
+            }
+            table.put(symbols.length);
+            for (char symbol : symbols) {
+                table.put(symbol);
+            }
+            table.put(states);
+            table.put(classCount);
+            copy(source, table);
+            channel.force(false);
+        }
+
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        return map(file, regex, symbols);
+    }
+
+    /**
+     * Writes the transitions and end state bits of a table to a buffer.
+     * @param source the table to copy.
+     * @param out the buffer, written from its current position.
+     */
+    private static void copy(TransitionTable source, IntBuffer out) {
+        int states = source.getStateCount();
+        int classCount = source.getClassCount();
+
+        for (int state = 0; state < states; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                out.put(source.get(state, symbolClass));
+            }
+        }
+
+        int[] bits = new int[acceptingWords(states)];
+        for (int state = 0; state < states; state++) {
+            if (source.isAccepting(state)) {
+                bits[state / Integer.SIZE] |= 1 << (state % Integer.SIZE);
+            }
+        }
+        out.put(bits);
+    }
+
+    /**
+     * Reads and checks the header of a table file, up to the state count.
+     * @param table the mapped file, positioned at its start.
+     * @param regex the expected regex.
+     * @param symbols the expected alphabet symbols.
+     * @return true if the header matches.
+     */
+    private static boolean headerMatches(IntBuffer table, String regex, char[] symbols) {
+        if (table.get() != MAGIC || table.get() != VERSION || table.get() != regex.length()) {
+            return false;
+        }
+        for (int i = 0; i < regex.length(); i++) {
+            if (table.get() != regex.charAt(i)) {
+                return false;
+            }
+        }
+        if (table.get() != symbols.length) {
+            return false;
+        }
+        for (char symbol : symbols) {
+            if (table.get() != symbol) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of ints in the header of a table file, not counting the state and class counts.
+     * @param regex the regex.
+     * @param symbols the alphabet symbols.
+     * @return the number of ints.
+     */
+    private static int headerSize(String regex, char[] symbols) {
+        return HEADER_FIELDS + regex.length() + symbols.length;
+    }
+
+    /**
+     * Gets the number of ints holding the transitions and end state bits.
+     * @param states the number of states.
+     * @param classCount the number of symbol classes.
+     * @return the number of ints, as a long since a large table has more than fit in an int.
+     */
+    private static long tableSize(int states, int classCount) {
+        return (long) states * classCount + acceptingWords(states);
+    }
+
+    /**
+     * Gets the number of ints in the end state bit set.
+     * @param states the number of states.
+     * @return the number of ints.
+     */
+    private static int acceptingWords(int states) {
+        return (states + Integer.SIZE - 1) / Integer.SIZE;
+    }
+
+    @Override
+    int getStateCount() {
+        return states;
+    }
+
+    @Override
+    int getClassCount() {
+        return classCount;
+    }
+
+    @Override
+    int get(int state, int symbolClass) {
+        return transitions.get(state * classCount + symbolClass);
+    }
+
+    @Override
+    boolean isAccepting(int state) {
+        return (acceptingBits.get(state / Integer.SIZE) & (1 << (state % Integer.SIZE))) != 0;
+    }
+}
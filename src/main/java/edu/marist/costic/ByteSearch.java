@@ -0,0 +1,87 @@
+package edu.marist.costic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds bytes in a buffer a word at a time. Eight bytes are read as a little endian long and compared
+ * against every target byte at once, so long runs of other bytes are skipped without looking at each on its own.
+ */
+final class ByteSearch {
+
+    // a 1 in the lowest and in the highest bit of every byte of a word
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * ByteSearch constructor.
+     */
+    private ByteSearch() {
+    }
+
+    /**
+     * Repeats a byte in every byte of a word.
+     * @param target the byte.
+     * @return the word.
+     */
+    static long broadcast(byte target) {
+        return (target & BYTE_MASK) * LOW_BITS;
+    }
+
+    /**
+     * Finds the first of any of a few bytes in a range of a buffer.
+     * @param words the buffer wrapped in a little endian ByteBuffer.
+     * @param buffer the buffer.
+     * @param from the start of the range.
+     * @param end the end of the range.
+     * @param broadcasts each target byte repeated in every byte of a word, see {@link #broadcast(byte)}.
+     * @param targets the target bytes.
+     * @return the index of the first target byte, or -1 if there is none in the range.
+     */
+    static int indexOf(ByteBuffer words, byte[] buffer, int from, int end, long[] broadcasts, byte[] targets) {
+        int i = from;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            long found = find(words.getLong(i), broadcasts);
+            if (found != 0) {
+                return i + Long.numberOfTrailingZeros(found) / Byte.SIZE;
+            }
+        }
+        return indexOfBytes(buffer, i, end, targets);
+    }
+
+    /**
+     * Finds the bytes of a word equal to any target byte.
+     * @param word the word.
+     * @param broadcasts each target byte repeated in every byte of a word.
+     * @return a word with the high bit set of the first matching byte, or 0 if no byte matches.
+     */
+    private static long find(long word, long[] broadcasts) {
+        long found = 0;
+        for (long broadcast : broadcasts) {
+            // the bytes equal to the target become zero and get their high bit set, a wrong high bit can
+            // only follow a real zero byte, so the lowest high bit always marks the first match
+            long difference = word ^ broadcast;
+            found |= (difference - LOW_BITS) & ~difference & HIGH_BITS;
+        }
+        return found;
+    }
+
+    /**
+     * Finds the first of any of a few bytes in a range of an array one byte at a time.
+     * @param buffer the array.
+     * @param from the start of the range.
+     * @param end the end of the range.
+     * @param targets the target bytes.
+     * @return the index of the first target byte, or -1 if there is none in the range.
+     */
+    private static int indexOfBytes(byte[] buffer, int from, int end, byte[] targets) {
+        for (int i = from; i < end; i++) {
+            for (byte target : targets) {
+                if (buffer[i] == target) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -12,6 +12,14 @@ public final class CONSTANTS {
     private static String nfaDot = "nfa.dot";
     /** Default DFA dot file name. */
     private static String dfaDot = "dfa.dot";
+    /** Milliseconds to wait between checks of a followed file. */
+    private static long followInterval = 250;
+    /** Default limit on the number of NFA states, reached by expanding large counted repetitions. */
+    private static int maxNFAStates = 100000;
+    /** Name of the command that builds a trigram index. */
+    private static String indexCommand = "index";
+    /** Extension of the default trigram index file, added to the input file name. */
+    private static String indexExtension = ".idx";
 
     /**
      * CONSTANTS constructor.
@@ -51,4 +59,36 @@ public final class CONSTANTS {
     public static String getDefaultDFAFile() {
         return dfaDot;
     }
+
+    /**
+     * Follow mode polling interval getter.
+     * @return Milliseconds to wait between checks of a followed file
+     */
+    public static long getFollowInterval() {
+        return followInterval;
+    }
+
+    /**
+     * Default NFA size limit getter.
+     * @return The most states an NFA may expand to
+     */
+    public static int getMaxNFAStates() {
+        return maxNFAStates;
+    }
+
+    /**
+     * Index command name getter.
+     * @return The first argument that builds a trigram index instead of matching
+     */
+    public static String getIndexCommand() {
+        return indexCommand;
+    }
+
+    /**
+     * Index file extension getter.
+     * @return Extension of the default index file
+     */
+    public static String getIndexExtension() {
+        return indexExtension;
+    }
 }
@@ -1,5 +1,9 @@
 package edu.marist.costic;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -9,42 +13,116 @@ import java.util.Set;
 
 /**
  * Represents a DFA.
+ * Once constructed it is never modified, so it can be used to match from several threads at once.
  */
-public class DFA {
-    // the delta function maps a state to the state it is connected to on a particular symbol
-    private Map<StateSymbolPair, Integer> deltaFunction;
+public class DFA implements Matcher {
+    // masks a byte to read it as an unsigned character
+    private static final int BYTE_MASK = 0xFF;
+
+    // the ways the end states of two DFAs can be combined by product construction
+    private static final int INTERSECTION = 0;
+    private static final int UNION = 1;
+    private static final int DIFFERENCE = 2;
+
     private int states;
     private Set<Character> alphabet;
 
-    // due to the nature of subset construction, the start state is always 0, but there could be multiple end states
-    private Set<Integer> endStates;
-
     // this will be used for printing to the .dot so each state is linked to the
     // string representation of the NFA subsets they represent
     private Map<Integer, String> subsetLabels;
 
+    // the delta function and end states, with one row per state and one column per symbol class.
+    // each alphabet symbol has its own class, and the last column is shared by every character outside the alphabet.
+    // due to the nature of subset construction, the start state is always 0, but there could be multiple end states
+    private TransitionTable table;
+    private int classCount;
+
+    // the alphabet symbols in the order of their symbol classes
+    private char[] symbols;
+
+    // maps a character to its symbol class, characters past the end of the array are outside the alphabet
+    private int[] symbolClasses;
+
+    // the shortcuts matching can take in each state
+    private Accelerator accelerator;
+
     /**
      * Constructs a DFA given an NFA and an alphabet.
      * @param nfa
      * @param alphabet
      */
     public DFA(NFA nfa, Set<Character> alphabet) {
+        this(nfa, alphabet, false);
+    }
+
+    /**
+     * Constructs a DFA given an NFA and an alphabet, choosing where its transition table is stored.
+     * An off heap table doesn't keep the subset labels, since they would be as large as the table itself.
+     * @param nfa
+     * @param alphabet
+     * @param offHeap true to store the transition table in a direct buffer outside of the heap.
+     */
+    public DFA(NFA nfa, Set<Character> alphabet, boolean offHeap) {
         this.alphabet = alphabet;
+        subsetLabels = new HashMap<Integer, String>();
+        buildSymbolClasses();
 
-        states = 0;
+        HeapTransitionTable built = subsetConstruction(nfa, !offHeap);
+        if (offHeap) {
+            table = BufferTransitionTable.allocateDirect(built);
+        } else {
+            table = built;
+        }
+        states = table.getStateCount();
+        accelerator = new Accelerator(table, symbols);
+    }
 
-        deltaFunction = new HashMap<StateSymbolPair, Integer>();
-        endStates = new HashSet<Integer>();
+    /**
+     * Constructs a DFA given an NFA and an alphabet, with its transition table in a memory mapped file.
+     * If the file already holds the table for the same regex and alphabet it is mapped as is,
+     * otherwise the DFA is constructed and written to the file. Several processes can map the same file.
+     * @param nfa
+     * @param alphabet
+     * @param tableFile the file holding the transition table.
+     * @throws IOException if the table file can't be read or written.
+     */
+    public DFA(NFA nfa, Set<Character> alphabet, File tableFile) throws IOException {
+        this.alphabet = alphabet;
         subsetLabels = new HashMap<Integer, String>();
+        buildSymbolClasses();
+
+        table = BufferTransitionTable.map(tableFile, nfa.getRegex(), symbols);
+        if (table == null) {
+            table = BufferTransitionTable.write(subsetConstruction(nfa, false), nfa.getRegex(), symbols, tableFile);
+        }
+        states = table.getStateCount();
+        accelerator = new Accelerator(table, symbols);
+    }
 
-        subsetConstruction(nfa);
+    /**
+     * Constructs a DFA from an already built transition table, used by the automaton operations.
+     * @param alphabet the alphabet the symbol classes of the table come from.
+     * @param table the transition table.
+     * @param subsetLabels the label of each state for the dot format.
+     */
+    private DFA(Set<Character> alphabet, TransitionTable table, Map<Integer, String> subsetLabels) {
+        this.alphabet = alphabet;
+        this.subsetLabels = subsetLabels;
+        buildSymbolClasses();
+        this.table = table;
+        states = table.getStateCount();
+        accelerator = new Accelerator(table, symbols);
     }
 
     /**
      * Constructs the DFA with the NFA using subset construction.
      * @param nfa
+     * @param keepLabels true to keep the label of each state for the dot format.
+     * @return the transition table of the DFA.
      */
-    private void subsetConstruction(NFA nfa) {
+    private HeapTransitionTable subsetConstruction(NFA nfa, boolean keepLabels) {
+        HeapTransitionTable built = new HeapTransitionTable(classCount);
+
         // A Queue of all subsets that still need to be processed
         Queue<Set<Integer>> unprocessedSubsets = new LinkedList<Set<Integer>>();
 
@@ -60,8 +138,7 @@ public class DFA {
         startingSet.add(nfa.getStartState());
         startingSet.addAll(nfa.epsilonClosure(nfa.getStartState()));
         unprocessedSubsets.add(startingSet);
-        subsetToDFAState.put(startingSet, 0);
-        states++;
+        subsetToDFAState.put(startingSet, built.addState());
 
 
         while (!unprocessedSubsets.isEmpty()) {
@@ -80,11 +157,13 @@ public class DFA {
 
             // if this subset contains the NFA end state, add this state to the DFA's end states
             if (currentSet.contains(nfa.getEndState())) {
-                endStates.add(currentState);
+                built.setAccepting(currentState);
             }
 
             // set the string representation for this state
-            subsetLabels.put(currentState, currentSet.toString());
+            if (keepLabels) {
+                subsetLabels.put(currentState, currentSet.toString());
+            }
 
             // for each symbol in the alphabet, get the next set of possible states with that symbol
             // and add them to the delta function
@@ -100,53 +179,333 @@ public class DFA {
                 if (!nextSubset.isEmpty()) {
                     int nextState = subsetToDFAState.getOrDefault(nextSubset, -1);
                     if (nextState == -1) {
-                        nextState = states;
-                        states++;
+                        nextState = built.addState();
                         subsetToDFAState.put(nextSubset, nextState);
                     }
 
-                    deltaFunction.put(new StateSymbolPair(currentState, c), nextState);
+                    built.set(currentState, symbolClasses[c], nextState);
 
                     unprocessedSubsets.add(nextSubset);
                 } // end if
             } // end for
         } // end while
+
+        built.trim();
+        return built;
     } // end method
 
+    /**
+     * Creates a DFA accepting the strings accepted by both this DFA and other.
+     * @param other the other DFA.
+     * @return the intersection of the two DFAs.
+     */
+    public DFA intersection(DFA other) {
+        return product(other, INTERSECTION);
+    }
+
+    /**
+     * Creates a DFA accepting the strings accepted by this DFA, other, or both.
+     * @param other the other DFA.
+     * @return the union of the two DFAs.
+     */
+    public DFA union(DFA other) {
+        return product(other, UNION);
+    }
+
+    /**
+     * Creates a DFA accepting the strings accepted by this DFA but not by other.
+     * @param other the other DFA.
+     * @return the difference of the two DFAs.
+     */
+    public DFA difference(DFA other) {
+        return product(other, DIFFERENCE);
+    }
+
+    /**
+     * Creates a DFA accepting exactly the strings this DFA rejects,
+     * including the ones containing characters outside of the alphabet.
+     * @return the complement of this DFA.
+     */
+    public DFA complement() {
+        HeapTransitionTable complemented = new HeapTransitionTable(classCount);
+        for (int state = 0; state <= states; state++) {
+            complemented.addState();
+        }
+
+        // the dead state becomes a real state, so that it can accept
+        int deadState = states;
+        for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+            complemented.set(deadState, symbolClass, deadState);
+        }
+        complemented.setAccepting(deadState);
+
+        for (int state = 0; state < states; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                int nextState = table.get(state, symbolClass);
+                complemented.set(state, symbolClass, nextState == -1 ? deadState : nextState);
+            }
+            if (!table.isAccepting(state)) {
+                complemented.setAccepting(state);
+            }
+        }
+
+        Map<Integer, String> labels = new HashMap<Integer, String>(subsetLabels);
+        labels.put(deadState, "dead");
+        return new DFA(alphabet, complemented, labels);
+    }
+
+    /**
+     * Copies this DFA into one with its transition table outside of the heap.
+     * @return the copy.
+     */
+    public DFA toOffHeap() {
+        return new DFA(alphabet, BufferTransitionTable.allocateDirect(table), new HashMap<Integer, String>());
+    }
+
+    /**
+     * Combines this DFA with another using product construction, so both are simulated in a single pass.
+     * Each state of the product is a pair of states, one from each DFA, where either one may be the dead state.
+     * @param other the other DFA.
+     * @param operation INTERSECTION, UNION or DIFFERENCE.
+     * @return the product DFA.
+     */
+    private DFA product(DFA other, int operation) {
+        Set<Character> productAlphabet = new HashSet<Character>(alphabet);
+        productAlphabet.addAll(other.alphabet);
+        char[] productSymbols = sortedSymbols(productAlphabet);
+
+        // map each symbol class of the product to the symbol class of each DFA, the last class is other characters
+        int productClassCount = productSymbols.length + 1;
+        int[] leftClasses = new int[productClassCount];
+        int[] rightClasses = new int[productClassCount];
+        for (int symbolClass = 0; symbolClass < productSymbols.length; symbolClass++) {
+            leftClasses[symbolClass] = symbolClassOf(productSymbols[symbolClass]);
+            rightClasses[symbolClass] = other.symbolClassOf(productSymbols[symbolClass]);
+        }
+        leftClasses[productSymbols.length] = classCount - 1;
+        rightClasses[productSymbols.length] = other.classCount - 1;
+
+        HeapTransitionTable built = new HeapTransitionTable(productClassCount);
+        Map<Integer, String> labels = new HashMap<Integer, String>();
+
+        // Maps each pair of states to the state it represents in the product, pairs are packed into a long
+        Map<Long, Integer> pairToState = new HashMap<Long, Integer>();
+        Queue<Long> unprocessedPairs = new LinkedList<Long>();
+
+        long startPair = pack(0, 0);
+        pairToState.put(startPair, built.addState());
+        unprocessedPairs.add(startPair);
+
+        while (!unprocessedPairs.isEmpty()) {
+            long pair = unprocessedPairs.remove();
+            int left = (int) (pair >> Integer.SIZE);
+            int right = (int) pair;
+            int currentState = pairToState.get(pair);
+
+            boolean leftAccepts = left != -1 && table.isAccepting(left);
+            boolean rightAccepts = right != -1 && other.table.isAccepting(right);
+            if (combinedAccepts(operation, leftAccepts, rightAccepts)) {
+                built.setAccepting(currentState);
+            }
+            labels.put(currentState, "(" + left + ", " + right + ")");
+
+            for (int symbolClass = 0; symbolClass < productClassCount; symbolClass++) {
+                int nextLeft = left == -1 ? -1 : table.get(left, leftClasses[symbolClass]);
+                int nextRight = right == -1 ? -1 : other.table.get(right, rightClasses[symbolClass]);
+
+                // pairs that can never accept are left as the dead state
+                if (combinedDead(operation, nextLeft == -1, nextRight == -1)) {
+                    continue;
+                }
+
+                long nextPair = pack(nextLeft, nextRight);
+                Integer nextState = pairToState.get(nextPair);
+                if (nextState == null) {
+                    nextState = built.addState();
+                    pairToState.put(nextPair, nextState);
+                    unprocessedPairs.add(nextPair);
+                }
+                built.set(currentState, symbolClass, nextState);
+            }
+        }
+
+        built.trim();
+        return new DFA(productAlphabet, built, labels);
+    }
+
+    /**
+     * Packs a pair of states, either of which may be -1, into a long.
+     * @param left the state of this DFA.
+     * @param right the state of the other DFA.
+     * @return the packed pair.
+     */
+    private static long pack(int left, int right) {
+        return ((long) left << Integer.SIZE) | Integer.toUnsignedLong(right);
+    }
+
+    /**
+     * Decides if a product state accepts, from whether its two states accept.
+     * @param operation INTERSECTION, UNION or DIFFERENCE.
+     * @param leftAccepts true if the state of this DFA accepts.
+     * @param rightAccepts true if the state of the other DFA accepts.
+     * @return true if the product state accepts.
+     */
+    private static boolean combinedAccepts(int operation, boolean leftAccepts, boolean rightAccepts) {
+        switch (operation) {
+            case INTERSECTION:
+                return leftAccepts && rightAccepts;
+            case UNION:
+                return leftAccepts || rightAccepts;
+            default:
+                return leftAccepts && !rightAccepts;
+        }
+    }
+
+    /**
+     * Decides if a product state can never accept, from which of its two states are dead.
+     * @param operation INTERSECTION, UNION or DIFFERENCE.
+     * @param leftDead true if the state of this DFA is the dead state.
+     * @param rightDead true if the state of the other DFA is the dead state.
+     * @return true if the product state is dead.
+     */
+    private static boolean combinedDead(int operation, boolean leftDead, boolean rightDead) {
+        switch (operation) {
+            case INTERSECTION:
+                return leftDead || rightDead;
+            case UNION:
+                return leftDead && rightDead;
+            default:
+                return leftDead;
+        }
+    }
+
+    /**
+     * Sorts the alphabet into symbol classes and builds the map from characters to symbol classes.
+     */
+    private void buildSymbolClasses() {
+        symbols = sortedSymbols(alphabet);
+
+        // the class of other characters comes after the classes of the alphabet symbols
+        classCount = symbols.length + 1;
+        int otherClass = symbols.length;
+        symbolClasses = new int[symbols.length == 0 ? 0 : symbols[symbols.length - 1] + 1];
+        Arrays.fill(symbolClasses, otherClass);
+        for (int symbolClass = 0; symbolClass < symbols.length; symbolClass++) {
+            symbolClasses[symbols[symbolClass]] = symbolClass;
+        }
+    }
+
+    /**
+     * Sorts the symbols of an alphabet.
+     * @param alphabet the alphabet.
+     * @return the symbols in ascending order.
+     */
+    private static char[] sortedSymbols(Set<Character> alphabet) {
+        char[] sorted = new char[alphabet.size()];
+        int i = 0;
+        for (char c : alphabet) {
+            sorted[i] = c;
+            i++;
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Gets the symbol class of a character.
+     * @param c the character.
+     * @return the symbol class, the last class if c is outside the alphabet.
+     */
+    private int symbolClassOf(char c) {
+        return c < symbolClasses.length ? symbolClasses[c] : classCount - 1;
+    }
+
+    /**
+     * Gets the number of states in the DFA.
+     * @return the number of states.
+     */
+    int getStateCount() {
+        return states;
+    }
+
+    /**
+     * Gets the number of symbol classes, one per alphabet symbol plus the class of all other characters.
+     * @return the number of symbol classes.
+     */
+    int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Gets the alphabet symbol of a symbol class.
+     * @param symbolClass a symbol class other than the last one.
+     * @return the symbol.
+     */
+    char getSymbol(int symbolClass) {
+        return symbols[symbolClass];
+    }
+
+    /**
+     * Gets the state reached from a state on a symbol class.
+     * @param state the current state.
+     * @param symbolClass the symbol class, the last class stands for every character outside the alphabet.
+     * @return the next state, or -1 for the dead state.
+     */
+    int getTransition(int state, int symbolClass) {
+        return table.get(state, symbolClass);
+    }
+
+    /**
+     * Checks if a state is an end state.
+     * @param state the state.
+     * @return true if the state is an end state.
+     */
+    boolean isAccepting(int state) {
+        return table.isAccepting(state);
+    }
+
     /**
      * Converts the DFA to dot format.
      * @return the dot format as a string.
      */
     public String convertToDot() {
-        String dotFormat = "digraph dfa {\n";
+        // built with a StringBuilder since a large DFA has a very long dot format
+        StringBuilder dotFormat = new StringBuilder("digraph dfa {\n");
 
         // add the double circle to the end states
-        for (int endState : endStates) {
-            dotFormat += "\t" + endState + " [shape=doublecircle];\n";
+        for (int state = 0; state < states; state++) {
+            if (table.isAccepting(state)) {
+                dotFormat.append("\t" + state + " [shape=doublecircle];\n");
+            }
         }
 
         // add the start state with a fake empty state to simulate the first arrow
-        dotFormat += "\tstart [label=\"\",shape=none];\n";
-        dotFormat += "\tstart -> " + 0 + ";\n\n";
+        dotFormat.append("\tstart [label=\"\",shape=none];\n");
+        dotFormat.append("\tstart -> " + 0 + ";\n\n");
 
         // add subset labels for each of the nodes
         for (int state : subsetLabels.keySet()) {
-            dotFormat += "\t" + state + " [label=\"" + subsetLabels.get(state) + "\"];\n";
+            dotFormat.append("\t" + state + " [label=\"" + subsetLabels.get(state) + "\"];\n");
         }
 
-        // add each of the node pairs to the string
-        for (StateSymbolPair pair : deltaFunction.keySet()) {
-            int dest = deltaFunction.get(pair);
-            if (pair.getSymbol() == StateSymbolPair.EPSILON) {
-                dotFormat += "\t" + pair.getState() + " -> " + dest + " [label=epsilon];\n";
-            } else {
-                dotFormat += "\t" + pair.getState() + " -> " + dest + " [label=" + pair.getSymbol() + "];\n";
+        // add each of the transitions that don't go to the dead state to the string
+        for (int state = 0; state < states; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                int dest = table.get(state, symbolClass);
+                if (dest == -1) {
+                    continue;
+                }
+                if (symbolClass == classCount - 1) {
+                    dotFormat.append("\t" + state + " -> " + dest + " [label=other];\n");
+                } else {
+                    dotFormat.append("\t" + state + " -> " + dest + " [label=" + symbols[symbolClass] + "];\n");
+                }
             }
         }
 
-        dotFormat += "}";
+        dotFormat.append("}");
 
-        return dotFormat;
+        return dotFormat.toString();
     }
 
     /**
@@ -155,13 +514,97 @@ public class DFA {
      * @return true if the string is accepted, false otherwise
      */
     public boolean accepts(String s) {
+        return matches(s);
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
         int currentState = 0;
-        for (int i = 0; i < s.length(); i++) {
-            currentState = deltaFunction.getOrDefault(new StateSymbolPair(currentState, s.charAt(i)), -1);
+        int end = input.length();
+        int i = 0;
+        while (i < end) {
+            byte kind = accelerator.kind(currentState);
+            if (kind == Accelerator.ACCEPT) {
+                return true;
+            } else if (kind == Accelerator.REJECT) {
+                return false;
+            } else if (kind != Accelerator.NONE) {
+                i = accelerator.skip(currentState, input, i, end);
+                if (i == end) {
+                    break;
+                }
+            }
+
+            currentState = step(currentState, input.charAt(i));
             if (currentState == -1) {
                 return false;
             }
+            i++;
         }
-        return endStates.contains(currentState);
+        return table.isAccepting(currentState);
+    }
+
+    @Override
+    public boolean matches(byte[] input, int offset, int length) {
+        int currentState = 0;
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            byte kind = accelerator.kind(currentState);
+            if (kind == Accelerator.ACCEPT) {
+                return true;
+            } else if (kind == Accelerator.REJECT) {
+                return false;
+            } else if (kind != Accelerator.NONE) {
+                i = accelerator.skip(currentState, input, i, end);
+                if (i == end) {
+                    break;
+                }
+            }
+
+            currentState = step(currentState, (char) (input[i] & BYTE_MASK));
+            if (currentState == -1) {
+                return false;
+            }
+            i++;
+        }
+        return table.isAccepting(currentState);
+    }
+
+    @Override
+    public boolean matches(ByteBuffer input) {
+        int currentState = 0;
+        int end = input.limit();
+        int i = input.position();
+        while (i < end) {
+            byte kind = accelerator.kind(currentState);
+            if (kind == Accelerator.ACCEPT) {
+                return true;
+            } else if (kind == Accelerator.REJECT) {
+                return false;
+            } else if (kind != Accelerator.NONE) {
+                i = accelerator.skip(currentState, input, i, end);
+                if (i == end) {
+                    break;
+                }
+            }
+
+            currentState = step(currentState, (char) (input.get(i) & BYTE_MASK));
+            if (currentState == -1) {
+                return false;
+            }
+            i++;
+        }
+        return table.isAccepting(currentState);
+    }
+
+    /**
+     * Looks up the next state in the transition table.
+     * @param state the current state.
+     * @param c the next character of the input.
+     * @return the next state, or -1 if the DFA can no longer accept.
+     */
+    private int step(int state, char c) {
+        return table.get(state, symbolClassOf(c));
     }
 }
@@ -0,0 +1,250 @@
+package edu.marist.costic;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip or zlib/deflate file on a producer thread while the calling thread matches its lines.
+ * Decompressed bytes are handed over through a bounded ring of reused buffers, so nothing is written to disk.
+ */
+public class DecompressionPipeline {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int RING_SIZE = 4;
+
+    // formats that can be recognized from the first two bytes of a file
+    private static final int FORMAT_NONE = 0;
+    private static final int FORMAT_GZIP = 1;
+    private static final int FORMAT_ZLIB = 2;
+
+    private static final int GZIP_MAGIC_FIRST = 0x1f;
+    private static final int GZIP_MAGIC_SECOND = 0x8b;
+    // the first zlib byte holds the compression method in its low half and the window size in its high half
+    private static final int ZLIB_METHOD_MASK = 0x0F;
+    private static final int ZLIB_DEFLATE = 8;
+    private static final int ZLIB_WINDOW_SHIFT = 4;
+    private static final int ZLIB_MAX_WINDOW = 7;
+    private static final int ZLIB_PRESET_DICTIONARY = 0x20;
+    private static final int ZLIB_HEADER_CHECK = 31;
+
+    private final File file;
+
+    // buffers waiting to be filled by the producer, and buffers waiting to be matched by the consumer
+    private final BlockingQueue<Chunk> freeChunks;
+    private final BlockingQueue<Chunk> filledChunks;
+
+    // set by the producer if decompression fails, rethrown on the consumer's side
+    private volatile IOException failure;
+
+    /**
+     * A reusable buffer and the number of valid bytes in it. A negative length marks the end of the input.
+     */
+    private static final class Chunk {
+        private final byte[] data = new byte[BUFFER_SIZE];
+        private int length;
+    }
+
+    /**
+     * Constructs a DecompressionPipeline for a compressed file.
+     * @param file the gzip or zlib compressed file.
+     */
+    public DecompressionPipeline(File file) {
+        this.file = file;
+
+        freeChunks = new ArrayBlockingQueue<Chunk>(RING_SIZE);
+        filledChunks = new ArrayBlockingQueue<Chunk>(RING_SIZE);
+        for (int i = 0; i < RING_SIZE; i++) {
+            freeChunks.add(new Chunk());
+        }
+    }
+
+    /**
+     * Checks if a file starts with a gzip or zlib header.
+     * @param file the file to check.
+     * @return true if the file is compressed in a format this class can read.
+     * @throws IOException if the file can't be read.
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return detectFormat(in.read(), in.read()) != FORMAT_NONE;
+        }
+    }
+
+    /**
+     * Decompresses the whole file, passing the decompressed bytes to the splitter as they become available.
+     * @param splitter the splitter that receives the decompressed bytes.
+     * @throws IOException if the file can't be read or decompressed.
+     */
+    public void run(RecordSplitter splitter) throws IOException {
+        Thread producer = new Thread(this::produce, CONSTANTS.getAppName() + "-decompress");
+        producer.setDaemon(true);
+        producer.start();
+
+        try {
+            while (true) {
+                Chunk chunk = filledChunks.take();
+                if (chunk.length < 0) {
+                    break;
+                }
+
+                splitter.feed(chunk.data, 0, chunk.length);
+
+                // hand the buffer back so the producer can reuse it
+                freeChunks.put(chunk);
+            }
+            producer.join();
+        } catch (InterruptedException e) {
+            producer.interrupt();
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        splitter.flush();
+    }
+
+    /**
+     * Producer loop, fills free buffers with decompressed bytes until the end of the file.
+     */
+    private void produce() {
+        try {
+            Chunk chunk = freeChunks.take();
+            try (InputStream in = openAndFill(chunk)) {
+                while (chunk.length > 0) {
+                    filledChunks.put(chunk);
+                    chunk = freeChunks.take();
+                    chunk.length = readFully(in, chunk.data);
+                }
+                chunk.length = -1;
+                filledChunks.put(chunk);
+            }
+        } catch (IOException e) {
+            failure = e;
+            signalEnd();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Opens the file and fills the first buffer with its decompressed bytes.
+     * If a zlib header's data can't be decompressed, the header only looked like one by chance, like text starting
+     * with "x^", and the file is read as it is instead, which is still possible since nothing has reached the
+     * consumer yet. The two bytes of the gzip magic number aren't text, so gzip data that can't be decompressed is
+     * corrupt and reported as an error.
+     * @param chunk the first buffer.
+     * @return the stream to read the rest of the file from.
+     * @throws IOException if the file can't be read, its gzip data is corrupt or it is cut off in the middle of the
+     *     compressed data.
+     */
+    private InputStream openAndFill(Chunk chunk) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        InputStream in = buffered;
+        int format = FORMAT_NONE;
+        try {
+            // peek at the header without consuming it
+            buffered.mark(2);
+            format = detectFormat(buffered.read(), buffered.read());
+            buffered.reset();
+
+            in = open(buffered, format);
+            chunk.length = readFully(in, chunk.data);
+            return in;
+        } catch (IOException e) {
+            in.close();
+            if (format != FORMAT_ZLIB || !(e instanceof ZipException)) {
+                throw e;
+            }
+        }
+
+        InputStream plain = new FileInputStream(file);
+        try {
+            chunk.length = readFully(plain, chunk.data);
+        } catch (IOException e) {
+            plain.close();
+            throw e;
+        }
+        return plain;
+    }
+
+    /**
+     * Tells the consumer that no more buffers will be filled, used when the producer fails.
+     */
+    private void signalEnd() {
+        try {
+            Chunk chunk = freeChunks.take();
+            chunk.length = -1;
+            filledChunks.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wraps the file in the decompressing stream that matches its header.
+     * @param in the file, positioned at its header.
+     * @param format the format of the header, one of the FORMAT constants.
+     * @return the decompressed stream.
+     * @throws IOException if the file isn't compressed or its gzip header is corrupt.
+     */
+    private InputStream open(InputStream in, int format) throws IOException {
+        switch (format) {
+            case FORMAT_GZIP:
+                // the rest of the gzip header is read right away
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case FORMAT_ZLIB:
+                return new InflaterInputStream(in);
+            default:
+                throw new IOException("Unrecognized compression format in " + file);
+        }
+    }
+
+    /**
+     * Reads from a stream until the buffer is full or the stream ends.
+     * @param in the stream to read from.
+     * @param buffer the buffer to fill.
+     * @return the number of bytes read, 0 if the stream has ended.
+     * @throws IOException if the stream can't be read.
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Determines the compression format from the first two bytes of a file.
+     * @param first the first byte, or -1 if the file is empty.
+     * @param second the second byte, or -1 if the file is too short.
+     * @return one of the FORMAT constants.
+     */
+    private static int detectFormat(int first, int second) {
+        if (first == GZIP_MAGIC_FIRST && second == GZIP_MAGIC_SECOND) {
+            return FORMAT_GZIP;
+        }
+        // a zlib header of deflate data with a valid window size, no preset dictionary
+        // and a check that makes both bytes together a multiple of 31
+        if (first >= 0 && (first & ZLIB_METHOD_MASK) == ZLIB_DEFLATE && first >>> ZLIB_WINDOW_SHIFT <= ZLIB_MAX_WINDOW
+                && second >= 0 && (second & ZLIB_PRESET_DICTIONARY) == 0
+                && ((first << Byte.SIZE) | second) % ZLIB_HEADER_CHECK == 0) {
+            return FORMAT_ZLIB;
+        }
+        return FORMAT_NONE;
+    }
+}
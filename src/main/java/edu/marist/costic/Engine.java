@@ -0,0 +1,15 @@
+package edu.marist.costic;
+
+/**
+ * The matching engines a compiled regex can run on.
+ */
+public enum Engine {
+    /** Simulates the DFA with its dense transition table. */
+    TABLE,
+    /** Runs a class generated for the DFA, falling back to the table when the DFA is too large. */
+    BYTECODE,
+    /** Simulates the Glushkov automaton bit-parallel, falling back to the table when the regex is too long for it. */
+    SHIFT_AND,
+    /** Benchmarks the generated class and the Glushkov automaton against the table and keeps the fastest. */
+    AUTO
+}
@@ -0,0 +1,174 @@
+package edu.marist.costic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Chooses the matcher that runs a regex according to the requested engine.
+ */
+final class EngineSelector {
+
+    // without real input, the benchmark input is a fixed set of random walks through the DFA
+    private static final long SAMPLE_SEED = 42;
+    private static final int SAMPLE_COUNT = 64;
+    private static final int SAMPLE_LENGTH = 128;
+
+    // rounds run before timing starts so both matchers get compiled by the JIT
+    private static final int WARMUP_ROUNDS = 150;
+    private static final int MEASURED_ROUNDS = 50;
+
+    /**
+     * EngineSelector constructor.
+     */
+    private EngineSelector() {
+    }
+
+    /**
+     * Gets the matcher for a DFA on the requested engine.
+     * @param dfa the DFA to match with.
+     * @param engine the requested engine.
+     * @return the matcher.
+     */
+    static Matcher select(DFA dfa, Engine engine) {
+        return select(dfa, engine, new ArrayList<String>());
+    }
+
+    /**
+     * Gets the matcher for a DFA on the requested engine, benchmarking on inputs like the ones it will match.
+     * The generated code branches on every character, so how it compares to the table depends on the input.
+     * @param dfa the DFA to match with.
+     * @param engine the requested engine.
+     * @param input inputs the matcher will be used on, only the first few are used. If empty, random inputs are.
+     * @return the matcher.
+     */
+    static Matcher select(DFA dfa, Engine engine, List<String> input) {
+        return select(null, dfa, engine, input);
+    }
+
+    /**
+     * Gets the matcher for a regex on the requested engine, benchmarking on inputs like the ones it will match.
+     * The Glushkov automaton is built from the NFA's syntax tree, so without an NFA only the DFA engines are used.
+     * @param nfa the NFA the DFA was built from, or null if the DFA combines several regexes.
+     * @param dfa the DFA to match with.
+     * @param engine the requested engine.
+     * @param input inputs the matcher will be used on, only the first few are used. If empty, random inputs are.
+     * @return the matcher.
+     */
+    static Matcher select(NFA nfa, DFA dfa, Engine engine, List<String> input) {
+        if (engine == Engine.TABLE) {
+            return dfa;
+        }
+
+        Matcher shiftAnd = nfa == null ? null : ShiftAndMatcher.compile(nfa);
+        if (engine == Engine.SHIFT_AND) {
+            return shiftAnd == null ? dfa : shiftAnd;
+        }
+
+        Matcher generated = MatcherGenerator.generate(dfa);
+        if (engine == Engine.BYTECODE) {
+            return generated == null ? dfa : generated;
+        }
+
+        // the table comes first so it wins ties
+        List<Matcher> candidates = new ArrayList<Matcher>();
+        candidates.add(dfa);
+        if (generated != null) {
+            candidates.add(generated);
+        }
+        if (shiftAnd != null) {
+            candidates.add(shiftAnd);
+        }
+        if (candidates.size() == 1) {
+            return dfa;
+        }
+        List<String> samples;
+        if (input.isEmpty()) {
+            samples = samples(dfa);
+        } else {
+            samples = input.subList(0, Math.min(input.size(), SAMPLE_COUNT));
+        }
+        return fastest(candidates, samples);
+    }
+
+    /**
+     * Times matchers on the same inputs.
+     * @param candidates the matchers.
+     * @param samples the inputs to time them on.
+     * @return whichever matcher had the lowest best round time, the earlier one if they tie.
+     */
+    private static Matcher fastest(List<Matcher> candidates, List<String> samples) {
+        long[] best = new long[candidates.size()];
+        Arrays.fill(best, Long.MAX_VALUE);
+
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            for (int i = 0; i < candidates.size(); i++) {
+                long time = time(candidates.get(i), samples);
+                if (round >= WARMUP_ROUNDS) {
+                    best[i] = Math.min(best[i], time);
+                }
+            }
+        }
+
+        int fastest = 0;
+        for (int i = 1; i < best.length; i++) {
+            if (best[i] < best[fastest]) {
+                fastest = i;
+            }
+        }
+        return candidates.get(fastest);
+    }
+
+    /**
+     * Times one round of a matcher over all samples.
+     * @param matcher the matcher.
+     * @param samples the inputs.
+     * @return the elapsed time in nanoseconds.
+     */
+    private static long time(Matcher matcher, List<String> samples) {
+        long start = System.nanoTime();
+        int accepted = 0;
+        for (String sample : samples) {
+            if (matcher.matches(sample)) {
+                accepted++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        // use the result so the loop can't be optimized away
+        return accepted < 0 ? 0 : elapsed;
+    }
+
+    /**
+     * Builds benchmark inputs by taking random walks through the DFA, so they reach states beyond the start.
+     * @param dfa the DFA.
+     * @return the sample inputs.
+     */
+    private static List<String> samples(DFA dfa) {
+        Random random = new Random(SAMPLE_SEED);
+        int otherClass = dfa.getClassCount() - 1;
+        List<String> samples = new ArrayList<String>();
+
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            StringBuilder sample = new StringBuilder();
+            int state = 0;
+            while (sample.length() < SAMPLE_LENGTH) {
+                // pick one of the alphabet symbols that doesn't lead to the dead state
+                List<Integer> live = new ArrayList<Integer>();
+                for (int symbolClass = 0; symbolClass < otherClass; symbolClass++) {
+                    if (dfa.getTransition(state, symbolClass) != -1) {
+                        live.add(symbolClass);
+                    }
+                }
+                if (live.isEmpty()) {
+                    break;
+                }
+                int symbolClass = live.get(random.nextInt(live.size()));
+                sample.append(dfa.getSymbol(symbolClass));
+                state = dfa.getTransition(state, symbolClass);
+            }
+            samples.add(sample.toString());
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,228 @@
+package edu.marist.costic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+/**
+ * Follows a growing file, matching only the records appended since the last read against a compiled regex.
+ *
+ * Log rotation is noticed in both of its usual forms. When the file is renamed and a new one is created in its place,
+ * the path leads to another file key, like another inode, and the new file is read from its beginning once the old
+ * one has been read to its end. When the file is copied and truncated in place, it is shorter than what has been read,
+ * or it has grown again by the next poll and its first bytes are no longer the ones read before, and it is read
+ * again from its beginning.
+ */
+public class FileFollower {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // how many of the first bytes of the file are kept to notice it was rewritten from the beginning
+    private static final int HEAD_SIZE = 256;
+
+    private final File file;
+    private final Utils utils;
+
+    // splits the newly read bytes into records and prints the accepted ones
+    private final RecordSplitter splitter;
+
+    // the file being read, its file key and its modification time when it was last polled
+    private FileChannel channel;
+    private Object fileKey;
+    private FileTime lastModified;
+
+    // the position in the file up to which everything has been read
+    private long position;
+
+    // the first bytes read from the file, and a buffer to read them again into
+    private final byte[] head = new byte[HEAD_SIZE];
+    private final byte[] currentHead = new byte[HEAD_SIZE];
+    private int headLength;
+
+    /**
+     * Constructs a FileFollower for a file and the matcher to match its records with.
+     * @param file the file to follow.
+     * @param matcher the compiled matcher, kept for the whole time the file is followed.
+     * @param utils the utils holding the record delimiter, also used for logging and printing.
+     */
+    public FileFollower(File file, Matcher matcher, Utils utils) {
+        this(file, new RecordSplitter(utils.getRecordDelimiter(), record -> {
+            if (matcher.matches(record)) {
+                utils.printRecord(record);
+            }
+        }), utils);
+    }
+
+    /**
+     * Constructs a FileFollower that hands the records of a file to a splitter.
+     * @param file the file to follow.
+     * @param splitter the splitter that receives the bytes read.
+     * @param utils the utils used for logging.
+     */
+    FileFollower(File file, RecordSplitter splitter, Utils utils) {
+        this.file = file;
+        this.splitter = splitter;
+        this.utils = utils;
+        position = 0;
+    }
+
+    /**
+     * Reads the file from the beginning and then keeps polling it for appended bytes.
+     * This method only returns if the file can no longer be read.
+     */
+    public void follow() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        try {
+            try {
+                while (true) {
+                    if (!poll(buffer)) {
+                        Thread.sleep(CONSTANTS.getFollowInterval());
+                    }
+                }
+            } finally {
+                close();
+            }
+        } catch (IOException e) {
+            Utils.error("Error following input file: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the bytes appended to the file since the last poll, up to the size of the buffer.
+     * The file is opened by the first poll, and opened again if another file has taken its place.
+     * @param buffer the buffer to read into.
+     * @return true if any bytes were read or another file was opened, false if the file hasn't grown.
+     * @throws IOException if the file can't be read.
+     */
+    boolean poll(ByteBuffer buffer) throws IOException {
+        if (channel == null) {
+            open();
+        }
+
+        // null while a renamed file hasn't been replaced yet
+        BasicFileAttributes attributes = readAttributes();
+        boolean replaced = attributes != null && !Objects.equals(attributes.fileKey(), fileKey);
+        long size = channel.size();
+
+        if (!replaced && isRewritten(size, attributes)) {
+            // the file was truncated, so start over from its beginning
+            utils.log("File truncated, reading from the beginning");
+            restart();
+        }
+        if (attributes != null && !replaced) {
+            lastModified = attributes.lastModifiedTime();
+        }
+
+        if (size == position) {
+            if (!replaced) {
+                return false;
+            }
+            // the renamed file has been read to its end, so its last record is complete
+            utils.log("File rotated, reading the new file from the beginning");
+            splitter.flush();
+            close();
+            restart();
+            open();
+            return true;
+        }
+
+        // read only the bytes appended since the last read
+        buffer.clear();
+        int read = channel.read(buffer, position);
+        if (read <= 0) {
+            return false;
+        }
+        if (position < HEAD_SIZE) {
+            int headBytes = (int) Math.min(read, HEAD_SIZE - position);
+            System.arraycopy(buffer.array(), 0, head, (int) position, headBytes);
+            headLength += headBytes;
+        }
+        position += read;
+        splitter.feed(buffer.array(), 0, read);
+        return true;
+    }
+
+    /**
+     * Closes the file being read, if any.
+     * @throws IOException if the file can't be closed.
+     */
+    void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Opens the file and remembers which file it is.
+     * @throws IOException if the file can't be opened.
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        BasicFileAttributes attributes = readAttributes();
+        fileKey = attributes == null ? null : attributes.fileKey();
+        lastModified = attributes == null ? null : attributes.lastModifiedTime();
+    }
+
+    /**
+     * Reads the attributes of the file the path leads to now.
+     * @return the attributes, or null if there is no file at the path.
+     * @throws IOException if the attributes can't be read.
+     */
+    private BasicFileAttributes readAttributes() throws IOException {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if the file being read was truncated since the last poll, whether or not it has grown again since.
+     * Its first bytes are only read again if it has grown or was modified.
+     * @param size the size of the file.
+     * @param attributes the attributes of the file, or null if there is no file at the path.
+     * @return true if what has been read is no longer the start of the file.
+     * @throws IOException if the file can't be read.
+     */
+    private boolean isRewritten(long size, BasicFileAttributes attributes) throws IOException {
+        if (size < position) {
+            return true;
+        }
+        boolean modified = attributes != null && !attributes.lastModifiedTime().equals(lastModified);
+        if (headLength == 0 || (size == position && !modified)) {
+            return false;
+        }
+
+        ByteBuffer current = ByteBuffer.wrap(currentHead, 0, headLength);
+        while (current.hasRemaining()) {
+            if (channel.read(current, current.position()) < 0) {
+                return true;
+            }
+        }
+        for (int i = 0; i < headLength; i++) {
+            if (currentHead[i] != head[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts reading the file again from its beginning, dropping any partial record.
+     */
+    private void restart() {
+        position = 0;
+        headLength = 0;
+        splitter.reset();
+    }
+}
@@ -0,0 +1,90 @@
+package edu.marist.costic;
+
+import java.util.Arrays;
+
+/**
+ * A transition table in plain arrays on the heap, which grows as states are added.
+ * Two arrays hold the whole table, so the garbage collector has a constant amount of work no matter its size.
+ */
+final class HeapTransitionTable extends TransitionTable {
+
+    private static final int INITIAL_STATES = 16;
+
+    private final int classCount;
+    private int states;
+
+    // row major, the next state of state s on symbol class c is at s * classCount + c
+    private int[] transitions;
+    private boolean[] accepting;
+
+    /**
+     * Constructs an empty HeapTransitionTable.
+     * @param classCount the number of symbol classes.
+     */
+    HeapTransitionTable(int classCount) {
+        this.classCount = classCount;
+        states = 0;
+        transitions = new int[INITIAL_STATES * classCount];
+        accepting = new boolean[INITIAL_STATES];
+    }
+
+    /**
+     * Adds a state whose transitions all go to the dead state.
+     * @return the new state.
+     */
+    int addState() {
+        if (states == accepting.length) {
+            accepting = Arrays.copyOf(accepting, states * 2);
+            transitions = Arrays.copyOf(transitions, states * 2 * classCount);
+        }
+        Arrays.fill(transitions, states * classCount, (states + 1) * classCount, -1);
+        states++;
+        return states - 1;
+    }
+
+    /**
+     * Sets the state reached from a state on a symbol class.
+     * @param state the current state.
+     * @param symbolClass the symbol class.
+     * @param nextState the next state, or -1 for the dead state.
+     */
+    void set(int state, int symbolClass, int nextState) {
+        transitions[state * classCount + symbolClass] = nextState;
+    }
+
+    /**
+     * Makes a state an end state.
+     * @param state the state.
+     */
+    void setAccepting(int state) {
+        accepting[state] = true;
+    }
+
+    /**
+     * Shrinks the arrays to the number of states, once no more states will be added.
+     */
+    void trim() {
+        transitions = Arrays.copyOf(transitions, states * classCount);
+        accepting = Arrays.copyOf(accepting, states);
+    }
+
+    @Override
+    int getStateCount() {
+        return states;
+    }
+
+    @Override
+    int getClassCount() {
+        return classCount;
+    }
+
+    @Override
+    int get(int state, int symbolClass) {
+        return transitions[state * classCount + symbolClass];
+    }
+
+    @Override
+    boolean isAccepting(int state) {
+        return accepting[state];
+    }
+}
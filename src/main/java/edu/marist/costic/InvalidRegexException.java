@@ -4,6 +4,10 @@ package edu.marist.costic;
  * Exception for regex parse errors in the NFA class.
  */
 public class InvalidRegexException extends Exception {
+    /**
+     * Constructs an InvalidRegexException with a message describing the problem.
+     * @param message the error message.
+     */
     public InvalidRegexException(String message) {
         super(message);
     }
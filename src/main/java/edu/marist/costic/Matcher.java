@@ -0,0 +1,34 @@
+package edu.marist.costic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides whether whole inputs are accepted by a compiled regex.
+ * Implementations are immutable, so one instance can be shared between threads.
+ */
+public interface Matcher {
+
+    /**
+     * Checks if a sequence of characters is accepted.
+     * @param input the characters to test.
+     * @return true if the whole input is accepted.
+     */
+    boolean matches(CharSequence input);
+
+    /**
+     * Checks if a slice of a byte array is accepted. Each byte is read as the character with the same value.
+     * @param input the array holding the bytes to test.
+     * @param offset the start of the slice.
+     * @param length the number of bytes in the slice.
+     * @return true if the whole slice is accepted.
+     */
+    boolean matches(byte[] input, int offset, int length);
+
+    /**
+     * Checks if the bytes between the position and the limit of a buffer are accepted.
+     * Each byte is read as the character with the same value. The buffer's position is not changed.
+     * @param input the buffer holding the bytes to test.
+     * @return true if all remaining bytes are accepted.
+     */
+    boolean matches(ByteBuffer input);
+}
@@ -0,0 +1,540 @@
+package edu.marist.costic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a class at runtime that matches one specific DFA.
+ * Each state becomes a block of code ending in a switch that jumps straight to the block of the next state,
+ * so the JIT sees the whole automaton as plain control flow instead of loads from a transition table.
+ */
+final class MatcherGenerator {
+
+    // Java 5 class files are verified without stack map frames, which keeps the generated code simple
+    private static final int CLASS_VERSION = 49;
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int SIPUSH = 0x11;
+    private static final int ILOAD_2 = 0x1c;
+    private static final int ILOAD_3 = 0x1d;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int BALOAD = 0x33;
+    private static final int ISTORE_2 = 0x3d;
+    private static final int ISTORE_3 = 0x3e;
+    private static final int IADD = 0x60;
+    private static final int IAND = 0x7e;
+    private static final int IINC = 0x84;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    // length of the if_icmplt, iconst and ireturn instructions that end the input check of a state
+    private static final int END_CHECK_SKIP = 5;
+    private static final int BYTE_MASK = 0xFF;
+
+    // generated methods larger than this are not attempted, keeping every branch within a 16 bit offset
+    private static final int MAX_CODE_SIZE = 30000;
+
+    // a matches method compares two ints at most, and its locals are this, the input, the index and the end index
+    private static final int MATCHES_MAX_STACK = 2;
+    private static final int MATCHES_MAX_LOCALS = 4;
+    // the fixed fields of a Code attribute around the code itself
+    private static final int CODE_ATTRIBUTE_HEADER = Short.BYTES + Short.BYTES + Integer.BYTES;
+    private static final int CODE_ATTRIBUTE_TRAILER = Short.BYTES + Short.BYTES;
+
+    // the kinds of input a generated matches method reads from
+    private static final int INPUT_CHARS = 0;
+    private static final int INPUT_BYTES = 1;
+    private static final int INPUT_BUFFER = 2;
+
+    private static final String PACKAGE = "edu/marist/costic/generated/";
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    private final DFA dfa;
+
+    // the constant pool of the class being generated, and the index of each entry already added
+    private final ByteArrayOutputStream constantPool;
+    private final Map<String, Integer> constantIndexes;
+    private int constantCount;
+
+    /**
+     * Constructs a MatcherGenerator for a DFA.
+     * @param dfa the DFA to generate a matcher for.
+     */
+    private MatcherGenerator(DFA dfa) {
+        this.dfa = dfa;
+        constantPool = new ByteArrayOutputStream();
+        constantIndexes = new HashMap<String, Integer>();
+        constantCount = 1;
+    }
+
+    /**
+     * Generates and loads a matcher class specialized for a DFA.
+     * @param dfa the DFA to generate a matcher for.
+     * @return a new instance of the generated class, or null if the DFA is too large to generate code for
+     *     or the generated class can't be loaded.
+     */
+    static Matcher generate(DFA dfa) {
+        String className = PACKAGE + "DfaMatcher" + CLASS_COUNTER.incrementAndGet();
+        byte[] classFile = new MatcherGenerator(dfa).generateClass(className);
+        if (classFile == null) {
+            return null;
+        }
+
+        // every generated class gets its own loader, so it can be unloaded once the matcher is unreachable
+        GeneratedClassLoader loader = new GeneratedClassLoader(Matcher.class.getClassLoader());
+        try {
+            Class<?> generated = loader.define(className.replace('/', '.'), classFile);
+            return (Matcher) generated.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (LinkageError e) {
+            // code the verifier rejects is a bug in the generator, but the table DFA still matches correctly
+            return null;
+        }
+    }
+
+    /**
+     * Writes the class file of the generated matcher.
+     * @param className the internal name of the class.
+     * @return the class file, or null if one of the methods would be too large.
+     */
+    private byte[] generateClass(String className) {
+        int thisClass = classConstant(className);
+        int superClass = classConstant("java/lang/Object");
+        int matcherInterface = classConstant("edu/marist/costic/Matcher");
+
+        List<byte[]> methods = new ArrayList<byte[]>();
+        methods.add(method("<init>", "()V", constructorCode(), 1, 1));
+
+        String[] descriptors = {"(Ljava/lang/CharSequence;)Z", "([BII)Z", "(Ljava/nio/ByteBuffer;)Z"};
+        for (int input = INPUT_CHARS; input <= INPUT_BUFFER; input++) {
+            byte[] code = matchesCode(input);
+            if (code.length > MAX_CODE_SIZE) {
+                return null;
+            }
+            methods.add(method("matches", descriptors[input], code, MATCHES_MAX_STACK, MATCHES_MAX_LOCALS));
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(constantCount);
+            constantPool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(matcherInterface);
+            // no fields
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            // no class attributes
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Generates the constructor, which only calls the constructor of Object.
+     * @return the bytecode.
+     */
+    private byte[] constructorCode() {
+        Code code = new Code(0);
+        code.u1(ALOAD_0);
+        code.u1(INVOKESPECIAL);
+        code.u2(memberConstant(CONSTANT_METHODREF, "java/lang/Object", "<init>", "()V"));
+        code.u1(RETURN);
+        return code.resolve();
+    }
+
+    /**
+     * Generates a matches method. Local 2 holds the index of the next character and local 3 the end index.
+     * @param input the kind of input the method reads from.
+     * @return the bytecode.
+     */
+    private byte[] matchesCode(int input) {
+        int states = dfa.getStateCount();
+        int otherClass = dfa.getClassCount() - 1;
+
+        // labels 0 to states - 1 are the blocks of each state, the last label rejects the input
+        int reject = states;
+        Code code = new Code(states + 1);
+
+        // set up the current and end indexes
+        if (input == INPUT_CHARS) {
+            code.u1(ALOAD_1);
+            code.u1(INVOKEINTERFACE);
+            code.u2(memberConstant(CONSTANT_INTERFACE_METHODREF, "java/lang/CharSequence", "length", "()I"));
+            code.u1(1);
+            code.u1(0);
+            code.u1(ISTORE_3);
+            code.u1(ICONST_0);
+            code.u1(ISTORE_2);
+        } else if (input == INPUT_BYTES) {
+            code.u1(ILOAD_2);
+            code.u1(ILOAD_3);
+            code.u1(IADD);
+            code.u1(ISTORE_3);
+        } else {
+            code.u1(ALOAD_1);
+            code.u1(INVOKEVIRTUAL);
+            code.u2(memberConstant(CONSTANT_METHODREF, "java/nio/Buffer", "limit", "()I"));
+            code.u1(ISTORE_3);
+            code.u1(ALOAD_1);
+            code.u1(INVOKEVIRTUAL);
+            code.u2(memberConstant(CONSTANT_METHODREF, "java/nio/Buffer", "position", "()I"));
+            code.u1(ISTORE_2);
+        }
+
+        // the first state block directly follows the setup, since the start state is always 0
+        for (int state = 0; state < states; state++) {
+            code.label(state);
+
+            // at the end of the input, return whether this state accepts
+            code.u1(ILOAD_2);
+            code.u1(ILOAD_3);
+            code.u1(IF_ICMPLT);
+            code.u2(END_CHECK_SKIP);
+            code.u1(dfa.isAccepting(state) ? ICONST_1 : ICONST_0);
+            code.u1(IRETURN);
+
+            // read the next character and advance the index
+            readNext(code, input);
+            code.u1(IINC);
+            code.u1(2);
+            code.u1(1);
+
+            // jump to the next state, characters without a transition of their own share the default
+            int otherTarget = dfa.getTransition(state, otherClass);
+            List<Integer> keys = new ArrayList<Integer>();
+            List<Integer> targets = new ArrayList<Integer>();
+            for (int symbolClass = 0; symbolClass < otherClass; symbolClass++) {
+                int target = dfa.getTransition(state, symbolClass);
+                if (target != otherTarget) {
+                    keys.add((int) dfa.getSymbol(symbolClass));
+                    targets.add(target == -1 ? reject : target);
+                }
+            }
+            code.lookupSwitch(otherTarget == -1 ? reject : otherTarget, keys, targets);
+        }
+
+        code.label(reject);
+        code.u1(ICONST_0);
+        code.u1(IRETURN);
+
+        return code.resolve();
+    }
+
+    /**
+     * Generates the code that pushes the character at the current index.
+     * @param code the code to add to.
+     * @param input the kind of input to read from.
+     */
+    private void readNext(Code code, int input) {
+        code.u1(ALOAD_1);
+        code.u1(ILOAD_2);
+        if (input == INPUT_CHARS) {
+            code.u1(INVOKEINTERFACE);
+            code.u2(memberConstant(CONSTANT_INTERFACE_METHODREF, "java/lang/CharSequence", "charAt", "(I)C"));
+            code.u1(2);
+            code.u1(0);
+        } else {
+            if (input == INPUT_BYTES) {
+                code.u1(BALOAD);
+            } else {
+                code.u1(INVOKEVIRTUAL);
+                code.u2(memberConstant(CONSTANT_METHODREF, "java/nio/ByteBuffer", "get", "(I)B"));
+            }
+            // read the byte as an unsigned character
+            code.u1(SIPUSH);
+            code.u2(BYTE_MASK);
+            code.u1(IAND);
+        }
+    }
+
+    /**
+     * Writes a public method with a Code attribute.
+     * @param name the method name.
+     * @param descriptor the method descriptor.
+     * @param code the bytecode.
+     * @param maxStack the maximum operand stack depth of the code.
+     * @param maxLocals the number of local variables used by the code.
+     * @return the method_info structure.
+     */
+    private byte[] method(String name, String descriptor, byte[] code, int maxStack, int maxLocals) {
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        int codeIndex = utf8Constant("Code");
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+            out.writeShort(codeIndex);
+            // max_stack, max_locals, code_length, code, exception_table_length and attributes_count
+            out.writeInt(CODE_ATTRIBUTE_HEADER + code.length + CODE_ATTRIBUTE_TRAILER);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds a UTF8 entry to the constant pool if it isn't there yet.
+     * @param value the string.
+     * @return the index of the entry.
+     */
+    private int utf8Constant(String value) {
+        String key = "utf8 " + value;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            DataOutputStream out = new DataOutputStream(constantPool);
+            try {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index = addConstant(key);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a class entry to the constant pool if it isn't there yet.
+     * @param internalName the internal name of the class.
+     * @return the index of the entry.
+     */
+    private int classConstant(String internalName) {
+        String key = "class " + internalName;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int nameIndex = utf8Constant(internalName);
+            constantPool.write(CONSTANT_CLASS);
+            writeShort(nameIndex);
+            index = addConstant(key);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a method reference to the constant pool if it isn't there yet.
+     * @param tag CONSTANT_METHODREF or CONSTANT_INTERFACE_METHODREF.
+     * @param owner the internal name of the class declaring the method.
+     * @param name the method name.
+     * @param descriptor the method descriptor.
+     * @return the index of the entry.
+     */
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+        String key = tag + " " + owner + "." + name + descriptor;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int ownerIndex = classConstant(owner);
+            int nameIndex = utf8Constant(name);
+            int descriptorIndex = utf8Constant(descriptor);
+            constantPool.write(CONSTANT_NAME_AND_TYPE);
+            writeShort(nameIndex);
+            writeShort(descriptorIndex);
+            int nameAndTypeIndex = addConstant("nameAndType " + name + descriptor + " " + owner);
+
+            constantPool.write(tag);
+            writeShort(ownerIndex);
+            writeShort(nameAndTypeIndex);
+            index = addConstant(key);
+        }
+        return index;
+    }
+
+    /**
+     * Records the index of the entry just written to the constant pool.
+     * @param key the key identifying the entry.
+     * @return the index of the entry.
+     */
+    private int addConstant(String key) {
+        int index = constantCount;
+        constantCount++;
+        constantIndexes.put(key, index);
+        return index;
+    }
+
+    /**
+     * Writes a big endian short to the constant pool.
+     * @param value the value to write.
+     */
+    private void writeShort(int value) {
+        constantPool.write(value >>> Byte.SIZE);
+        constantPool.write(value);
+    }
+
+    /**
+     * Bytecode of a single method, with branches to labels that are resolved once all code is written.
+     */
+    private static final class Code {
+        private static final int SWITCH_ALIGNMENT = 4;
+        private static final int INITIAL_SIZE = 256;
+
+        private byte[] bytes;
+        private int length;
+
+        // the position of each label, or -1 if it hasn't been placed yet
+        private final int[] labels;
+
+        // each branch to patch: the position of its instruction, the position of its offset and the label
+        private final List<int[]> branches;
+
+        /**
+         * Constructs an empty Code object.
+         * @param labelCount the number of labels the code uses.
+         */
+        Code(int labelCount) {
+            bytes = new byte[INITIAL_SIZE];
+            length = 0;
+            labels = new int[labelCount];
+            Arrays.fill(labels, -1);
+            branches = new ArrayList<int[]>();
+        }
+
+        /**
+         * Appends one byte.
+         * @param value the byte.
+         */
+        void u1(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length] = (byte) value;
+            length++;
+        }
+
+        /**
+         * Appends a big endian short.
+         * @param value the short.
+         */
+        void u2(int value) {
+            u1(value >>> Byte.SIZE);
+            u1(value);
+        }
+
+        /**
+         * Appends a big endian int.
+         * @param value the int.
+         */
+        void u4(int value) {
+            u2(value >>> Short.SIZE);
+            u2(value);
+        }
+
+        /**
+         * Places a label at the current position.
+         * @param label the label.
+         */
+        void label(int label) {
+            labels[label] = length;
+        }
+
+        /**
+         * Appends a lookupswitch instruction.
+         * @param defaultLabel the label to jump to for any other key.
+         * @param keys the keys, in ascending order.
+         * @param targets the label to jump to for each key.
+         */
+        void lookupSwitch(int defaultLabel, List<Integer> keys, List<Integer> targets) {
+            int instruction = length;
+            u1(LOOKUPSWITCH);
+            // the operands start at a multiple of four from the start of the method
+            while (length % SWITCH_ALIGNMENT != 0) {
+                u1(0);
+            }
+            branches.add(new int[] {instruction, length, defaultLabel});
+            u4(0);
+            u4(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                u4(keys.get(i));
+                branches.add(new int[] {instruction, length, targets.get(i)});
+                u4(0);
+            }
+        }
+
+        /**
+         * Patches every branch with the offset of its label.
+         * @return the finished bytecode.
+         */
+        byte[] resolve() {
+            for (int[] branch : branches) {
+                int offset = labels[branch[2]] - branch[0];
+                int position = branch[1];
+                for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                    bytes[position] = (byte) (offset >>> shift);
+                    position++;
+                }
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /**
+     * Class loader that defines a single generated class.
+     */
+    private static final class GeneratedClassLoader extends ClassLoader {
+        /**
+         * Constructs a GeneratedClassLoader.
+         * @param parent the loader that can see the Matcher interface.
+         */
+        GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Defines a class from its class file.
+         * @param name the binary name of the class.
+         * @param classFile the class file.
+         * @return the defined class.
+         */
+        Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
@@ -3,12 +3,13 @@ package edu.marist.costic;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 
 /**
- * Represents an NFA.
+ * Represents an NFA, built with Thompson's algorithm from the simplified syntax tree of a regex.
  */
 public class NFA {
     // the delta function maps a state to the set of states it is connected to on a particular symbol
@@ -23,26 +24,78 @@ public class NFA {
     private int endState;
 
     private String regex;
-    private int currentChar;
+    private RegexNode syntaxTree;
+    private int parsedNodeCount;
+
+    // the most states the NFA may have, so large counted repetitions are rejected instead of expanded
+    private int maxStates;
 
     /**
      * Constructs an NFA object given a regex string and an alphabet to work with.
      * @param regex the regex string.
      * @param alphabet the alphabet to use.
+     * @throws InvalidRegexException if the regex can't be parsed.
+     */
+    public NFA(String regex, Set<Character> alphabet) throws InvalidRegexException {
+        this(regex, alphabet, false, CONSTANTS.getMaxNFAStates());
+    }
+
+    /**
+     * Constructs an NFA object given a regex string, an alphabet to work with and a limit on its size.
+     * @param regex the regex string.
+     * @param alphabet the alphabet to use.
+     * @param maxStates the most states counted repetitions may expand the NFA to.
+     * @throws InvalidRegexException if the regex can't be parsed or would have more than maxStates states.
+     */
+    public NFA(String regex, Set<Character> alphabet, int maxStates) throws InvalidRegexException {
+        this(regex, alphabet, false, maxStates);
+    }
+
+    /**
+     * Constructs an NFA object given only a regex string.
+     * The alphabet is made up of the symbols used in the regex itself.
+     * @param regex the regex string.
+     * @throws InvalidRegexException if the regex can't be parsed.
+     */
+    public NFA(String regex) throws InvalidRegexException {
+        this(regex, new HashSet<Character>(), true, CONSTANTS.getMaxNFAStates());
+    }
+
+    /**
+     * Constructs an NFA object given only a regex string and a limit on its size.
+     * The alphabet is made up of the symbols used in the regex itself.
+     * @param regex the regex string.
+     * @param maxStates the most states counted repetitions may expand the NFA to.
+     * @throws InvalidRegexException if the regex can't be parsed or would have more than maxStates states.
      */
-    public NFA(String regex, Set<Character> alphabet) {
+    public NFA(String regex, int maxStates) throws InvalidRegexException {
+        this(regex, new HashSet<Character>(), true, maxStates);
+    }
+
+    /**
+     * Constructs an NFA object given a regex string and an alphabet to work with.
+     * @param regex the regex string.
+     * @param alphabet the alphabet to use, or the symbols it starts with if symbols from the regex are added.
+     * @param openAlphabet true if symbols from the regex should be added to the alphabet.
+     * @param maxStates the most states counted repetitions may expand the NFA to.
+     * @throws InvalidRegexException if the regex can't be parsed.
+     */
+    NFA(String regex, Set<Character> alphabet, boolean openAlphabet, int maxStates)
+            throws InvalidRegexException {
         this.alphabet = alphabet;
         this.regex = regex;
-        currentChar = 0;
+        this.maxStates = maxStates;
         states = 0;
 
         deltaFunction = new HashMap<StateSymbolPair, Set<Integer>>();
 
-        try {
-            parseRegex();
-        } catch (InvalidRegexException e) {
-            Utils.error("Error parsing regex: " + e.getMessage());
-        }
+        RegexNode parsed = RegexParser.parse(regex, alphabet, openAlphabet);
+        parsedNodeCount = parsed.size();
+        syntaxTree = RegexOptimizer.optimize(parsed, alphabet);
+
+        int[] startEndStates = build(syntaxTree);
+        startState = startEndStates[0];
+        endState = startEndStates[1];
     }
 
     /**
@@ -53,6 +106,22 @@ public class NFA {
         return startState;
     }
 
+    /**
+     * Gets the regex the NFA was constructed from.
+     * @return the regex string.
+     */
+    public String getRegex() {
+        return regex;
+    }
+
+    /**
+     * Gets the alphabet of the NFA.
+     * @return the alphabet.
+     */
+    public Set<Character> getAlphabet() {
+        return alphabet;
+    }
+
     /**
      * Gets the end state of the NFA.
      * @return the end state.
@@ -130,137 +199,215 @@ public class NFA {
     }
 
     /**
-     * Starts the recursive descent through parsing the regex.
-     * @throws InvalidRegexException
+     * Gets the number of nodes in the syntax tree of the regex as it was parsed.
+     * @return the number of nodes.
      */
-    private void parseRegex() throws InvalidRegexException {
-        int[] startEndstates = parseUnionGroup();
-        startState = startEndstates[0];
-        endState = startEndstates[1];
+    public int getParsedNodeCount() {
+        return parsedNodeCount;
     }
 
     /**
-     * Parses a group of the regex where the lowest precedence operator is union, '+'.
-     * @return the beginning and end states given by Thompson's algorithm, inside of a int array.
-     * @throws InvalidRegexException
+     * Gets the number of nodes in the simplified syntax tree the NFA was built from.
+     * @return the number of nodes.
      */
-    private int[] parseUnionGroup() throws InvalidRegexException {
-        int[] leftSide = parseConcatGroup();
+    public int getOptimizedNodeCount() {
+        return syntaxTree.size();
+    }
 
-        if (currentChar < regex.length() && regex.charAt(currentChar) != ')') {
-            if (regex.charAt(currentChar) == '+') {
-                // the next character is a '+' so move past it
-                currentChar++;
-                int[] rightSide = parseUnionGroup();
+    /**
+     * Gets the simplified syntax tree the NFA was built from.
+     * @return the root of the tree.
+     */
+    RegexNode getSyntaxTree() {
+        return syntaxTree;
+    }
 
-                // get the next 2 available state counts and make them the beginning and the end of the union
-                int unionStart = states;
+    /**
+     * Builds the part of the NFA for a node of the syntax tree with Thompson's algorithm.
+     * @param node the node.
+     * @return the beginning and end states, inside of a int array.
+     * @throws InvalidRegexException if a counted repetition would make the NFA larger than the limit.
+     */
+    private int[] build(RegexNode node) throws InvalidRegexException {
+        switch (node.getType()) {
+            case RegexNode.EMPTY:
+                // only the empty string, which is a single state that is both the beginning and the end
+                int empty = states;
                 states++;
-                int unionEnd = states;
+                return new int[] {empty, empty};
+            case RegexNode.SYMBOL:
+                // get the next two available states for the start and end of this one symbol expression
+                int start = states;
+                states++;
+                int end = states;
                 states++;
 
-                // add the necessary relations to the delta function
-                addToDelta(new StateSymbolPair(unionStart), leftSide[0]);
-                addToDelta(new StateSymbolPair(unionStart), rightSide[0]);
-                addToDelta(new StateSymbolPair(leftSide[1]), unionEnd);
-                addToDelta(new StateSymbolPair(rightSide[1]), unionEnd);
-
-                return new int[] {unionStart, unionEnd};
-            } else {
-                throw new InvalidRegexException("Invalid characters beyond regex");
-            }
-        } else {
-            return leftSide;
+                // add the necessary relation to the delta function
+                addToDelta(new StateSymbolPair(start, node.getSymbol()), end);
+                return new int[] {start, end};
+            case RegexNode.CONCAT:
+                return buildConcat(node.getChildren());
+            case RegexNode.UNION:
+                return buildUnion(node.getChildren());
+            case RegexNode.STAR:
+                return buildStar(build(node.getGroup()));
+            case RegexNode.OPTIONAL:
+                int[] group = build(node.getGroup());
+
+                // a new beginning that can either enter the group or skip straight to its end
+                int optionalStart = states;
+                states++;
+                addToDelta(new StateSymbolPair(optionalStart), group[0]);
+                addToDelta(new StateSymbolPair(optionalStart), group[1]);
+                return new int[] {optionalStart, group[1]};
+            default:
+                int groupStates = states;
+                int[] firstCopy = build(node.getGroup());
+                return repeat(node.getGroup(), firstCopy, states - groupStates, node.getMin(), node.getMax());
         }
     }
 
     /**
-     * Parses a group of the regex where the lowest precedence operator is concatenation.
-     * @return the beginning and end states given by Thompson's algorithm, inside of a int array.
+     * Builds a concatenation, joining the end of each part to the beginning of the next.
+     * @param parts the parts.
+     * @return the beginning and end states, inside of a int array.
      * @throws InvalidRegexException
      */
-    private int[] parseConcatGroup() throws InvalidRegexException {
-        int[] leftSide = parseKleeneGroup();
-        if (currentChar < regex.length() && regex.charAt(currentChar) != ')' && regex.charAt(currentChar) != '+') {
-            // there is more to concat
-            int[] rightSide = parseConcatGroup();
+    private int[] buildConcat(List<RegexNode> parts) throws InvalidRegexException {
+        int[] concat = build(parts.get(0));
+        for (RegexNode part : parts.subList(1, parts.size())) {
+            int[] next = build(part);
 
             // add the necessary relation to the delta function
-            addToDelta(new StateSymbolPair(leftSide[1]), rightSide[0]);
-
-            return new int[] {leftSide[0], rightSide[1]};
-        } else {
-            return leftSide;
+            addToDelta(new StateSymbolPair(concat[1]), next[0]);
+            concat = new int[] {concat[0], next[1]};
         }
+        return concat;
     }
 
     /**
-     * Parses a group of the regex where the lowest precedence operator is Kleene star, '*'.
-     * @return the beginning and end states given by Thompson's algorithm, inside of a int array.
+     * Builds a union of the arms, nesting it to the right the way a+b+c was always parsed, as a+(b+c).
+     * @param arms the arms.
+     * @return the beginning and end states, inside of a int array.
      * @throws InvalidRegexException
      */
-    private int[] parseKleeneGroup() throws InvalidRegexException {
-        int[] symbolGroup = parseSymbolGroup();
-        if (currentChar < regex.length() && regex.charAt(currentChar) == '*') {
-            // the next character is a '*' so move past it
-            currentChar++;
-
-            // get the next 2 available state counts and make them the beginning and the end of the kleene group
-            int kleeneStart = states;
-            states++;
-            int kleeneEnd = states;
-            states++;
+    private int[] buildUnion(List<RegexNode> arms) throws InvalidRegexException {
+        int[] leftSide = build(arms.get(0));
+        int[] rightSide = arms.size() == 2 ? build(arms.get(1)) : buildUnion(arms.subList(1, arms.size()));
+
+        // get the next 2 available state counts and make them the beginning and the end of the union
+        int unionStart = states;
+        states++;
+        int unionEnd = states;
+        states++;
+
+        // add the necessary relations to the delta function
+        addToDelta(new StateSymbolPair(unionStart), leftSide[0]);
+        addToDelta(new StateSymbolPair(unionStart), rightSide[0]);
+        addToDelta(new StateSymbolPair(leftSide[1]), unionEnd);
+        addToDelta(new StateSymbolPair(rightSide[1]), unionEnd);
+        return new int[] {unionStart, unionEnd};
+    }
 
-            // add the necessary relations to the delta function
-            addToDelta(new StateSymbolPair(kleeneStart), symbolGroup[0]);
-            addToDelta(new StateSymbolPair(symbolGroup[1]), kleeneEnd);
-            addToDelta(new StateSymbolPair(kleeneStart), kleeneEnd);
-            addToDelta(new StateSymbolPair(symbolGroup[1]), symbolGroup[0]);
-            return new int[] {kleeneStart, kleeneEnd};
-        }
-        return symbolGroup;
+    /**
+     * Builds a Kleene star around a group.
+     * @param group the beginning and end states of the group.
+     * @return the beginning and end states of the star.
+     */
+    private int[] buildStar(int[] group) {
+        // get the next 2 available state counts and make them the beginning and the end of the kleene group
+        int kleeneStart = states;
+        states++;
+        int kleeneEnd = states;
+        states++;
+
+        // add the necessary relations to the delta function
+        addToDelta(new StateSymbolPair(kleeneStart), group[0]);
+        addToDelta(new StateSymbolPair(group[1]), kleeneEnd);
+        addToDelta(new StateSymbolPair(kleeneStart), kleeneEnd);
+        addToDelta(new StateSymbolPair(group[1]), group[0]);
+        return new int[] {kleeneStart, kleeneEnd};
     }
 
     /**
-     * Parses a group of the regex made up of either a symbol or another regex string inside of parenthesis.
-     * @return the beginning and end states given by Thompson's algorithm, inside of a int array.
-     * @throws InvalidRegexException
+     * Builds a counted repetition of a group, making as few copies of the group as possible.
+     * {m} and {m,n} concatenate m and n copies, where the last n - m copies can be skipped to the end
+     * from the end of any copy before them. {m,} loops the last of its m copies back onto itself,
+     * so it only needs m copies rather than the m + 1 of writing out the group m times followed by a star.
+     * @param groupNode the syntax tree of the group, used to build more copies of it.
+     * @param group the beginning and end states of the group, used as the first copy.
+     * @param groupSize the number of states in one copy of the group.
+     * @param min the least number of repetitions.
+     * @param max the most number of repetitions, or -1 if there is no upper bound.
+     * @return the beginning and end states of the repetition.
+     * @throws InvalidRegexException if the copies would make the NFA larger than the limit.
      */
-    private int[] parseSymbolGroup() throws InvalidRegexException {
-        if (currentChar >= regex.length()) {
-            throw new InvalidRegexException("Reached end of regex expecting more characters");
+    private int[] repeat(RegexNode groupNode, int[] group, int groupSize, int min, int max)
+            throws InvalidRegexException {
+        long copies = Math.max(max == -1 ? min : max, 1);
+        // the first copy already exists, and up to two more states may be needed to join the copies
+        if (states + (copies - 1) * groupSize + 2 > maxStates) {
+            throw new InvalidRegexException("Repetition would expand the NFA past " + maxStates + " states");
         }
-        if (regex.charAt(currentChar) == '(') {
-            // the next character is a '(' so move past it
-            currentChar++;
 
-            // call the top level regex expression
-            int[] innerRegex = parseUnionGroup();
+        if (max == 0) {
+            return build(RegexNode.empty());
+        }
 
-            if (regex.charAt(currentChar) == ')') {
-                currentChar++;
-            } else {
-                throw new InvalidRegexException("Missing right parenthesis");
-            }
+        int start = group[0];
+        int end = group[1];
+        int lastCopyStart = group[0];
+        int required = Math.max(min, 1);
+
+        // concatenate the copies that must be matched
+        for (int i = 1; i < required; i++) {
+            int[] copy = build(groupNode);
+            addToDelta(new StateSymbolPair(end), copy[0]);
+            lastCopyStart = copy[0];
+            end = copy[1];
+        }
 
-            return innerRegex;
-        } else if (alphabet.contains(regex.charAt(currentChar))) {
-            // get the next two available states for the start and end of this one symbol expression
-            int start = states;
-            states++;
-            int end = states;
+        if (max == -1) {
+            // loop the last copy back onto itself for any number of further repetitions,
+            // then leave through a new end so that nothing skipping to the end can enter the loop
+            addToDelta(new StateSymbolPair(end), lastCopyStart);
+            int loopEnd = states;
             states++;
+            addToDelta(new StateSymbolPair(end), loopEnd);
+            if (min == 0) {
+                // with no minimum, even the first copy can be skipped
+                int optionalStart = states;
+                states++;
+                addToDelta(new StateSymbolPair(optionalStart), start);
+                addToDelta(new StateSymbolPair(optionalStart), loopEnd);
+                start = optionalStart;
+            }
+            return new int[] {start, loopEnd};
+        }
 
-            // add the necessary relation to the delta function
-            addToDelta(new StateSymbolPair(start, regex.charAt(currentChar)), end);
-
-            // advance the character counter
-            currentChar++;
-
+        if (required == max && min > 0) {
             return new int[] {start, end};
-        } else {
-            throw new InvalidRegexException("Character not in recognized alphabet");
         }
+
+        // the optional copies can each be skipped straight to a shared end
+        int optionalEnd = states;
+        states++;
+        if (min == 0) {
+            // even the first copy is optional
+            int optionalStart = states;
+            states++;
+            addToDelta(new StateSymbolPair(optionalStart), start);
+            addToDelta(new StateSymbolPair(optionalStart), optionalEnd);
+            start = optionalStart;
+        }
+        for (int i = required; i < max; i++) {
+            int[] copy = build(groupNode);
+            addToDelta(new StateSymbolPair(end), copy[0]);
+            addToDelta(new StateSymbolPair(end), optionalEnd);
+            end = copy[1];
+        }
+        addToDelta(new StateSymbolPair(end), optionalEnd);
+        return new int[] {start, optionalEnd};
     }
 
     /**
@@ -0,0 +1,101 @@
+package edu.marist.costic;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * A compiled regex, for embedding the matching engine without going through the command line.
+ * A Pattern is immutable, so it can be compiled once and shared between any number of threads.
+ *
+ * <pre>
+ * Pattern pattern = Pattern.compile("(a+b)*c");
+ * boolean accepted = pattern.matches("ababc");
+ * </pre>
+ */
+public final class Pattern implements Matcher {
+
+    private final String regex;
+    private final Matcher matcher;
+
+    /**
+     * Constructs a Pattern from a regex and the matcher compiled from it.
+     * @param regex the regex string.
+     * @param matcher the compiled matcher.
+     */
+    private Pattern(String regex, Matcher matcher) {
+        this.regex = regex;
+        this.matcher = matcher;
+    }
+
+    /**
+     * Compiles a regex, using the symbols in the regex as the alphabet.
+     * Characters outside of that alphabet are never accepted.
+     * @param regex the regex string.
+     * @return the compiled pattern.
+     * @throws InvalidRegexException if the regex can't be parsed.
+     */
+    public static Pattern compile(String regex) throws InvalidRegexException {
+        return compile(regex, Engine.TABLE);
+    }
+
+    /**
+     * Compiles a regex to run on a specific engine, using the symbols in the regex as the alphabet.
+     * @param regex the regex string.
+     * @param engine the engine to run the compiled regex on.
+     * @return the compiled pattern.
+     * @throws InvalidRegexException if the regex can't be parsed.
+     */
+    public static Pattern compile(String regex, Engine engine) throws InvalidRegexException {
+        NFA nfa = new NFA(regex);
+        if (engine == Engine.SHIFT_AND) {
+            // the Glushkov automaton needs no DFA, so the subset construction is skipped unless it can't be used
+            Matcher shiftAnd = ShiftAndMatcher.compile(nfa);
+            if (shiftAnd != null) {
+                return new Pattern(regex, shiftAnd);
+            }
+        }
+        DFA dfa = new DFA(nfa, nfa.getAlphabet());
+        return new Pattern(regex, EngineSelector.select(nfa, dfa, engine, new ArrayList<String>()));
+    }
+
+    /**
+     * Compiles a regex over a given alphabet.
+     * @param regex the regex string.
+     * @param alphabet the alphabet, every symbol in the regex must be part of it.
+     * @return the compiled pattern.
+     * @throws InvalidRegexException if the regex can't be parsed or uses a symbol outside of the alphabet.
+     */
+    public static Pattern compile(String regex, Set<Character> alphabet) throws InvalidRegexException {
+        NFA nfa = new NFA(regex, alphabet);
+        return new Pattern(regex, new DFA(nfa, alphabet));
+    }
+
+    /**
+     * Gets the regex this pattern was compiled from.
+     * @return the regex string.
+     */
+    public String getRegex() {
+        return regex;
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        return matcher.matches(input);
+    }
+
+    @Override
+    public boolean matches(byte[] input, int offset, int length) {
+        return matcher.matches(input, offset, length);
+    }
+
+    @Override
+    public boolean matches(ByteBuffer input) {
+        return matcher.matches(input);
+    }
+
+    @Override
+    public String toString() {
+        return regex;
+    }
+}
@@ -0,0 +1,105 @@
+package edu.marist.costic;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Describes how input is split into records: at newlines, at a delimiter of one or more bytes,
+ * or into records of a fixed length.
+ */
+public final class RecordDelimiter {
+
+    // the delimiter bytes, or null for fixed length records
+    private final byte[] delimiter;
+    private final int recordLength;
+
+    // true for newline records, which also drop a carriage return before the newline
+    private final boolean newline;
+
+    /**
+     * Constructs a RecordDelimiter.
+     * @param delimiter the delimiter bytes, or null for fixed length records.
+     * @param recordLength the length of fixed length records.
+     * @param newline true if the records are lines.
+     */
+    private RecordDelimiter(byte[] delimiter, int recordLength, boolean newline) {
+        this.delimiter = delimiter;
+        this.recordLength = recordLength;
+        this.newline = newline;
+    }
+
+    /**
+     * Records that are lines, ended by "\n" or "\r\n".
+     * @return the delimiter.
+     */
+    public static RecordDelimiter newline() {
+        return new RecordDelimiter(new byte[] {'\n'}, 0, true);
+    }
+
+    /**
+     * Records ended by a sequence of bytes, such as a NUL byte or the blank line "\n\n".
+     * @param delimiter the delimiter bytes.
+     * @return the delimiter.
+     */
+    public static RecordDelimiter of(byte[] delimiter) {
+        if (delimiter.length == 0) {
+            throw new IllegalArgumentException("Record delimiter can't be empty");
+        }
+        return new RecordDelimiter(delimiter.clone(), 0, false);
+    }
+
+    /**
+     * Records ended by a string, encoded as UTF-8.
+     * @param delimiter the delimiter string.
+     * @return the delimiter.
+     */
+    public static RecordDelimiter of(String delimiter) {
+        return of(delimiter.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Records that all have the same length in bytes, without any delimiter.
+     * @param recordLength the length of each record.
+     * @return the delimiter.
+     */
+    public static RecordDelimiter fixedLength(int recordLength) {
+        if (recordLength <= 0) {
+            throw new IllegalArgumentException("Record length must be positive");
+        }
+        return new RecordDelimiter(null, recordLength, false);
+    }
+
+    /**
+     * Gets the delimiter bytes.
+     * @return the delimiter bytes, or null for fixed length records.
+     */
+    byte[] getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * Gets the length of fixed length records.
+     * @return the record length, or 0 if the records are delimited.
+     */
+    int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * Checks if the records are lines.
+     * @return true for newline records.
+     */
+    boolean isNewline() {
+        return newline;
+    }
+
+    /**
+     * Gets the text to print after each accepted record, so the output is split the same way as the input.
+     * @return the delimiter as a string, or the line separator for lines and fixed length records.
+     */
+    public String getTerminator() {
+        if (newline || delimiter == null) {
+            return System.lineSeparator();
+        }
+        return new String(delimiter, StandardCharsets.UTF_8);
+    }
+}
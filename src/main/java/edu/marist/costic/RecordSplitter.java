@@ -0,0 +1,261 @@
+package edu.marist.costic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Splits chunks of bytes into records, carrying a partial trailing record over until it is complete.
+ *
+ * Delimiters are found a word at a time with {@link ByteSearch}, so long records are skipped over
+ * without comparing every byte on its own.
+ */
+public class RecordSplitter {
+
+    private static final int INITIAL_CARRY_SIZE = 256;
+
+    // receives each complete record, without its delimiter
+    private final Consumer<String> recordConsumer;
+
+    private final boolean newline;
+    private final int recordLength;
+    private final byte[] delimiter;
+
+    // the first delimiter byte, and that byte repeated in every byte of a word, for searching with ByteSearch
+    private final byte[] firstByte;
+    private final long[] firstByteWord;
+
+    // the bytes of an incomplete record left over from the previous chunk
+    private byte[] carry;
+    private int carryLength;
+
+    /**
+     * Constructs a RecordSplitter that splits lines and passes each complete line to lineConsumer.
+     * @param lineConsumer the consumer of the lines.
+     */
+    public RecordSplitter(Consumer<String> lineConsumer) {
+        this(RecordDelimiter.newline(), lineConsumer);
+    }
+
+    /**
+     * Constructs a RecordSplitter that passes each complete record to recordConsumer.
+     * @param recordDelimiter how the bytes are split into records.
+     * @param recordConsumer the consumer of the records.
+     */
+    public RecordSplitter(RecordDelimiter recordDelimiter, Consumer<String> recordConsumer) {
+        this.recordConsumer = recordConsumer;
+        newline = recordDelimiter.isNewline();
+        recordLength = recordDelimiter.getRecordLength();
+        delimiter = recordDelimiter.getDelimiter();
+        firstByte = delimiter == null ? new byte[0] : new byte[] {delimiter[0]};
+        firstByteWord = delimiter == null ? new long[0] : new long[] {ByteSearch.broadcast(delimiter[0])};
+        carry = new byte[INITIAL_CARRY_SIZE];
+        carryLength = 0;
+    }
+
+    /**
+     * Feeds the next chunk of bytes to the splitter.
+     * Every record completed by this chunk is passed to the consumer, the rest is carried over.
+     * @param buffer the buffer holding the chunk.
+     * @param offset the start of the chunk in buffer.
+     * @param length the number of bytes in the chunk.
+     */
+    public void feed(byte[] buffer, int offset, int length) {
+        if (delimiter == null) {
+            feedFixedLength(buffer, offset, length);
+            return;
+        }
+
+        int recordStart = offset;
+        int end = offset + length;
+
+        if (carryLength > 0 && delimiter.length > 1) {
+            recordStart = completeCarriedDelimiter(buffer, offset, length);
+        }
+
+        // one view per chunk lets the search read the chunk a long at a time
+        ByteBuffer words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        int i = indexOf(words, buffer, recordStart, end);
+        while (i >= 0) {
+            if (carryLength == 0) {
+                // the whole record is inside this chunk so it can be decoded in place
+                emit(buffer, recordStart, i - recordStart);
+            } else {
+                append(buffer, recordStart, i - recordStart);
+                emit(carry, 0, carryLength);
+                carryLength = 0;
+            }
+            recordStart = i + delimiter.length;
+            i = indexOf(words, buffer, recordStart, end);
+        }
+
+        // keep whatever is left until the rest of the record arrives
+        append(buffer, recordStart, end - recordStart);
+    }
+
+    /**
+     * Passes any carried over partial record to the consumer as a complete record.
+     * A trailing part of a delimiter, like the last newline of records split by blank lines, is dropped.
+     * Should be called once the input has ended.
+     */
+    public void flush() {
+        if (carryLength > 0) {
+            int length = carryLength;
+            if (delimiter != null && delimiter.length > 1) {
+                length -= delimiterPrefixAtEnd(carry, 0, carryLength);
+            }
+            emit(carry, 0, length);
+            carryLength = 0;
+        }
+    }
+
+    /**
+     * Discards any carried over partial record.
+     */
+    public void reset() {
+        carryLength = 0;
+    }
+
+    /**
+     * Splits a chunk into records of a fixed length.
+     * @param buffer the buffer holding the chunk.
+     * @param offset the start of the chunk in buffer.
+     * @param length the number of bytes in the chunk.
+     */
+    private void feedFixedLength(byte[] buffer, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+
+        if (carryLength > 0) {
+            int needed = Math.min(recordLength - carryLength, length);
+            append(buffer, start, needed);
+            start += needed;
+            if (carryLength < recordLength) {
+                return;
+            }
+            emit(carry, 0, carryLength);
+            carryLength = 0;
+        }
+
+        while (end - start >= recordLength) {
+            emit(buffer, start, recordLength);
+            start += recordLength;
+        }
+        append(buffer, start, end - start);
+    }
+
+    /**
+     * Looks for a multi-byte delimiter that starts in the carried over record and ends in the new chunk.
+     * If there is one, the carried over record is complete and is passed to the consumer.
+     * @param buffer the buffer holding the chunk.
+     * @param offset the start of the chunk in buffer.
+     * @param length the number of bytes in the chunk.
+     * @return where the next record starts in buffer.
+     */
+    private int completeCarriedDelimiter(byte[] buffer, int offset, int length) {
+        int carried = carryLength;
+        int from = Math.max(0, carried - delimiter.length + 1);
+
+        // borrow just enough of the chunk to finish a delimiter started at the end of the carry
+        append(buffer, offset, Math.min(delimiter.length - 1, length));
+        for (int start = from; start < carried; start++) {
+            if (start + delimiter.length <= carryLength && delimiterAt(carry, start)) {
+                carryLength = 0;
+                emit(carry, 0, start);
+                return offset + start + delimiter.length - carried;
+            }
+        }
+        carryLength = carried;
+        return offset;
+    }
+
+    /**
+     * Finds the next delimiter in a chunk.
+     * @param words the chunk wrapped for reading longs.
+     * @param buffer the buffer holding the chunk.
+     * @param from where to start looking.
+     * @param end the end of the chunk.
+     * @return the index of the first delimiter byte, or -1 if the rest of the chunk holds no complete delimiter.
+     */
+    private int indexOf(ByteBuffer words, byte[] buffer, int from, int end) {
+        int i = from;
+        int last = end - delimiter.length;
+        while (i <= last) {
+            int found = ByteSearch.indexOf(words, buffer, i, last + 1, firstByteWord, firstByte);
+            if (found < 0) {
+                return -1;
+            }
+            if (delimiter.length == 1 || delimiterAt(buffer, found)) {
+                return found;
+            }
+            i = found + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the whole delimiter starts at an index.
+     * @param buffer the buffer to check, holding at least the delimiter length of bytes from start.
+     * @param start the index.
+     * @return true if the delimiter is there.
+     */
+    private boolean delimiterAt(byte[] buffer, int start) {
+        for (int j = 0; j < delimiter.length; j++) {
+            if (buffer[start + j] != delimiter[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the length of the longest start of the delimiter that the bytes end with.
+     * @param buffer the buffer holding the bytes.
+     * @param offset the start of the bytes in buffer.
+     * @param length the number of bytes.
+     * @return the length, shorter than the delimiter.
+     */
+    private int delimiterPrefixAtEnd(byte[] buffer, int offset, int length) {
+        for (int prefix = Math.min(delimiter.length - 1, length); prefix > 0; prefix--) {
+            boolean matches = true;
+            for (int j = 0; j < prefix && matches; j++) {
+                matches = buffer[offset + length - prefix + j] == delimiter[j];
+            }
+            if (matches) {
+                return prefix;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Appends bytes to the carried over partial record, growing it if needed.
+     * @param buffer the buffer holding the bytes.
+     * @param offset the start of the bytes in buffer.
+     * @param length the number of bytes.
+     */
+    private void append(byte[] buffer, int offset, int length) {
+        if (carryLength + length > carry.length) {
+            byte[] grown = new byte[Math.max(carry.length * 2, carryLength + length)];
+            System.arraycopy(carry, 0, grown, 0, carryLength);
+            carry = grown;
+        }
+        System.arraycopy(buffer, offset, carry, carryLength, length);
+        carryLength += length;
+    }
+
+    /**
+     * Decodes a record and passes it to the consumer, dropping the carriage return before a newline.
+     * @param buffer the buffer holding the record.
+     * @param offset the start of the record in buffer.
+     * @param length the number of bytes in the record.
+     */
+    private void emit(byte[] buffer, int offset, int length) {
+        int decodedLength = length;
+        if (newline && decodedLength > 0 && buffer[offset + decodedLength - 1] == '\r') {
+            decodedLength--;
+        }
+        recordConsumer.accept(new String(buffer, offset, decodedLength, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,245 @@
+package edu.marist.costic;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A node of the syntax tree of a regex.
+ * Symbols are the leaves, concatenations and unions hold any number of parts,
+ * and the postfix operators each hold the one group they apply to.
+ */
+final class RegexNode {
+
+    static final int EMPTY = 0;
+    static final int SYMBOL = 1;
+    static final int CONCAT = 2;
+    static final int UNION = 3;
+    static final int STAR = 4;
+    static final int OPTIONAL = 5;
+    static final int REPEAT = 6;
+
+    private final int type;
+    private final char symbol;
+    private final List<RegexNode> children;
+    private final int min;
+    private final int max;
+
+    /**
+     * Constructs a RegexNode.
+     * @param type the type, one of EMPTY, SYMBOL, CONCAT, UNION, STAR, OPTIONAL or REPEAT.
+     * @param symbol the symbol of a SYMBOL node.
+     * @param children the parts of the node, empty for EMPTY and SYMBOL nodes.
+     * @param min the least number of repetitions of a REPEAT node.
+     * @param max the most number of repetitions of a REPEAT node, or -1 if there is no upper bound.
+     */
+    private RegexNode(int type, char symbol, List<RegexNode> children, int min, int max) {
+        this.type = type;
+        this.symbol = symbol;
+        this.children = children;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * The node matching only the empty string, as left by a repetition like a{0}.
+     * @return the node.
+     */
+    static RegexNode empty() {
+        return new RegexNode(EMPTY, StateSymbolPair.EPSILON, Collections.<RegexNode>emptyList(), 0, 0);
+    }
+
+    /**
+     * The node matching one symbol.
+     * @param symbol the symbol.
+     * @return the node.
+     */
+    static RegexNode symbol(char symbol) {
+        return new RegexNode(SYMBOL, symbol, Collections.<RegexNode>emptyList(), 0, 0);
+    }
+
+    /**
+     * The node matching its parts one after another.
+     * @param parts the parts.
+     * @return the node.
+     */
+    static RegexNode concat(List<RegexNode> parts) {
+        return new RegexNode(CONCAT, StateSymbolPair.EPSILON, Collections.unmodifiableList(parts), 0, 0);
+    }
+
+    /**
+     * The node matching any one of its arms.
+     * @param arms the arms.
+     * @return the node.
+     */
+    static RegexNode union(List<RegexNode> arms) {
+        return new RegexNode(UNION, StateSymbolPair.EPSILON, Collections.unmodifiableList(arms), 0, 0);
+    }
+
+    /**
+     * The node matching a group any number of times, '*'.
+     * @param group the group.
+     * @return the node.
+     */
+    static RegexNode star(RegexNode group) {
+        return new RegexNode(STAR, StateSymbolPair.EPSILON, Collections.singletonList(group), 0, 0);
+    }
+
+    /**
+     * The node matching a group or nothing, '?'.
+     * @param group the group.
+     * @return the node.
+     */
+    static RegexNode optional(RegexNode group) {
+        return new RegexNode(OPTIONAL, StateSymbolPair.EPSILON, Collections.singletonList(group), 0, 0);
+    }
+
+    /**
+     * The node matching a counted repetition of a group, '{m}', '{m,}' or '{m,n}'.
+     * @param group the group.
+     * @param min the least number of repetitions.
+     * @param max the most number of repetitions, or -1 if there is no upper bound.
+     * @return the node.
+     */
+    static RegexNode repeat(RegexNode group, int min, int max) {
+        return new RegexNode(REPEAT, StateSymbolPair.EPSILON, Collections.singletonList(group), min, max);
+    }
+
+    /**
+     * Gets the type of the node.
+     * @return one of EMPTY, SYMBOL, CONCAT, UNION, STAR, OPTIONAL or REPEAT.
+     */
+    int getType() {
+        return type;
+    }
+
+    /**
+     * Gets the symbol of a SYMBOL node.
+     * @return the symbol.
+     */
+    char getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Gets the parts of a CONCAT node, the arms of a UNION node or the one group of a postfix operator.
+     * @return the children, which can't be modified.
+     */
+    List<RegexNode> getChildren() {
+        return children;
+    }
+
+    /**
+     * Gets the group a STAR, OPTIONAL or REPEAT node applies to.
+     * @return the group.
+     */
+    RegexNode getGroup() {
+        return children.get(0);
+    }
+
+    /**
+     * Gets the least number of repetitions of a REPEAT node.
+     * @return the minimum.
+     */
+    int getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the most number of repetitions of a REPEAT node.
+     * @return the maximum, or -1 if there is no upper bound.
+     */
+    int getMax() {
+        return max;
+    }
+
+    /**
+     * Counts the nodes of the tree rooted at this node.
+     * @return the number of nodes.
+     */
+    int size() {
+        int size = 1;
+        for (RegexNode child : children) {
+            size += child.size();
+        }
+        return size;
+    }
+
+    /**
+     * Checks if the tree rooted at this node has the epsilon symbol in it.
+     * @return true if one of its symbols is epsilon.
+     */
+    boolean usesEpsilon() {
+        if (type == SYMBOL) {
+            return symbol == StateSymbolPair.EPSILON;
+        }
+        for (RegexNode child : children) {
+            if (child.usesEpsilon()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof RegexNode)) {
+            return false;
+        }
+        RegexNode node = (RegexNode) other;
+        return type == node.type && symbol == node.symbol && min == node.min && max == node.max
+                && children.equals(node.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, symbol, children, min, max);
+    }
+
+    /**
+     * Writes the tree back out in regex syntax. The empty string has no syntax of its own and is written as "()".
+     * @return the regex string.
+     */
+    @Override
+    public String toString() {
+        StringBuilder regex = new StringBuilder();
+        switch (type) {
+            case EMPTY:
+                regex.append("()");
+                break;
+            case SYMBOL:
+                regex.append(symbol);
+                break;
+            case CONCAT:
+                for (RegexNode part : children) {
+                    // only a union binds more loosely than a concatenation
+                    regex.append(part.type == UNION ? "(" + part + ")" : part.toString());
+                }
+                break;
+            case UNION:
+                for (RegexNode arm : children) {
+                    if (regex.length() > 0) {
+                        regex.append('+');
+                    }
+                    regex.append(arm);
+                }
+                break;
+            default:
+                RegexNode group = getGroup();
+                // a postfix operator applies to the group and operators before it,
+                // so only unions and concatenations need parentheses
+                regex.append(group.type == UNION || group.type == CONCAT ? "(" + group + ")" : group.toString());
+                if (type == STAR) {
+                    regex.append('*');
+                } else if (type == OPTIONAL) {
+                    regex.append('?');
+                } else if (max == min) {
+                    regex.append('{').append(min).append('}');
+                } else {
+                    regex.append('{').append(min).append(',').append(max == -1 ? "" : String.valueOf(max)).append('}');
+                }
+                break;
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,277 @@
+package edu.marist.costic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simplifies the syntax tree of a regex before the NFA is built from it, without changing the strings it matches.
+ *
+ * Nested concatenations and unions are flattened, stars and options directly inside a star are dropped since
+ * the star already repeats and skips its group, repeated union arms are removed, and arms starting with the same
+ * group share it, so abc+abd becomes ab(c+d). Every node left out is a few NFA states fewer,
+ * and factored arms leave the subset construction fewer states to track at once.
+ */
+final class RegexOptimizer {
+
+    /**
+     * RegexOptimizer constructor.
+     */
+    private RegexOptimizer() {
+    }
+
+    /**
+     * Simplifies a syntax tree.
+     * A tree using the epsilon symbol, or one for an alphabet holding it, is left as it is, since spaces
+     * in the input are matched through the epsilon transitions of the NFA, which depend on exactly
+     * how the regex was written.
+     * @param tree the root of the tree.
+     * @param alphabet the alphabet the regex is matched over.
+     * @return the root of the simplified tree.
+     */
+    static RegexNode optimize(RegexNode tree, Set<Character> alphabet) {
+        if (tree.usesEpsilon() || alphabet.contains(StateSymbolPair.EPSILON)) {
+            return tree;
+        }
+        return simplify(tree);
+    }
+
+    /**
+     * Simplifies a syntax tree from the bottom up.
+     * @param node the root of the tree.
+     * @return the root of the simplified tree.
+     */
+    private static RegexNode simplify(RegexNode node) {
+        switch (node.getType()) {
+            case RegexNode.CONCAT:
+                return concat(simplifyAll(node.getChildren()));
+            case RegexNode.UNION:
+                return union(simplifyAll(node.getChildren()));
+            case RegexNode.STAR:
+                return star(simplify(node.getGroup()));
+            case RegexNode.OPTIONAL:
+                return optional(simplify(node.getGroup()));
+            case RegexNode.REPEAT:
+                return repeat(simplify(node.getGroup()), node.getMin(), node.getMax());
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * Simplifies each of a list of trees.
+     * @param nodes the roots of the trees.
+     * @return the roots of the simplified trees.
+     */
+    private static List<RegexNode> simplifyAll(List<RegexNode> nodes) {
+        List<RegexNode> simplified = new ArrayList<RegexNode>();
+        for (RegexNode node : nodes) {
+            simplified.add(simplify(node));
+        }
+        return simplified;
+    }
+
+    /**
+     * Builds a concatenation, taking the parts out of nested concatenations and leaving out empty parts.
+     * @param parts the simplified parts.
+     * @return the concatenation, or its only part.
+     */
+    private static RegexNode concat(List<RegexNode> parts) {
+        List<RegexNode> flattened = new ArrayList<RegexNode>();
+        for (RegexNode part : parts) {
+            if (part.getType() == RegexNode.CONCAT) {
+                flattened.addAll(part.getChildren());
+            } else if (part.getType() != RegexNode.EMPTY) {
+                flattened.add(part);
+            }
+        }
+        if (flattened.isEmpty()) {
+            return RegexNode.empty();
+        }
+        return flattened.size() == 1 ? flattened.get(0) : RegexNode.concat(flattened);
+    }
+
+    /**
+     * Builds a union, taking the arms out of nested unions, removing repeated arms and factoring out shared starts.
+     * Empty and optional arms make the whole union optional instead.
+     * @param arms the simplified arms.
+     * @return the union, or its only arm.
+     */
+    private static RegexNode union(List<RegexNode> arms) {
+        List<RegexNode> distinct = new ArrayList<RegexNode>();
+        boolean matchesEmpty = false;
+        for (RegexNode arm : arms) {
+            matchesEmpty |= addArm(arm, distinct);
+        }
+
+        List<RegexNode> factored = factor(distinct);
+        RegexNode union;
+        if (factored.isEmpty()) {
+            return RegexNode.empty();
+        } else if (factored.size() == 1) {
+            union = factored.get(0);
+        } else {
+            union = RegexNode.union(factored);
+        }
+        return matchesEmpty ? optional(union) : union;
+    }
+
+    /**
+     * Adds an arm to a list of distinct arms, unless it is already there.
+     * @param arm the arm.
+     * @param distinct the distinct arms so far.
+     * @return true if the arm could match the empty string and that was left out of it.
+     */
+    private static boolean addArm(RegexNode arm, List<RegexNode> distinct) {
+        switch (arm.getType()) {
+            case RegexNode.EMPTY:
+                return true;
+            case RegexNode.OPTIONAL:
+                addArm(arm.getGroup(), distinct);
+                return true;
+            case RegexNode.UNION:
+                boolean matchesEmpty = false;
+                for (RegexNode inner : arm.getChildren()) {
+                    matchesEmpty |= addArm(inner, distinct);
+                }
+                return matchesEmpty;
+            default:
+                if (!distinct.contains(arm)) {
+                    distinct.add(arm);
+                }
+                return false;
+        }
+    }
+
+    /**
+     * Factors the first part shared by several arms out of them, keeping the arms in their order.
+     * @param arms the distinct arms.
+     * @return the factored arms.
+     */
+    private static List<RegexNode> factor(List<RegexNode> arms) {
+        Map<RegexNode, List<RegexNode>> byFirst = new LinkedHashMap<RegexNode, List<RegexNode>>();
+        for (RegexNode arm : arms) {
+            byFirst.computeIfAbsent(first(arm), first -> new ArrayList<RegexNode>()).add(arm);
+        }
+
+        List<RegexNode> factored = new ArrayList<RegexNode>();
+        for (Map.Entry<RegexNode, List<RegexNode>> entry : byFirst.entrySet()) {
+            List<RegexNode> group = entry.getValue();
+            if (group.size() == 1) {
+                factored.add(group.get(0));
+                continue;
+            }
+            // the rests are distinct since the arms are, and they are factored again in turn
+            List<RegexNode> rests = new ArrayList<RegexNode>();
+            for (RegexNode arm : group) {
+                rests.add(rest(arm));
+            }
+            factored.add(concat(Arrays.asList(entry.getKey(), union(rests))));
+        }
+        return factored;
+    }
+
+    /**
+     * Gets the first part of an arm.
+     * @param arm the arm.
+     * @return the first part of a concatenation, otherwise the arm itself.
+     */
+    private static RegexNode first(RegexNode arm) {
+        return arm.getType() == RegexNode.CONCAT ? arm.getChildren().get(0) : arm;
+    }
+
+    /**
+     * Gets what follows the first part of an arm.
+     * @param arm the arm.
+     * @return the rest of a concatenation, otherwise the empty node.
+     */
+    private static RegexNode rest(RegexNode arm) {
+        if (arm.getType() != RegexNode.CONCAT) {
+            return RegexNode.empty();
+        }
+        List<RegexNode> parts = arm.getChildren();
+        return concat(parts.subList(1, parts.size()));
+    }
+
+    /**
+     * Builds a Kleene star, flattening the stars and options nested directly inside it.
+     * @param group the simplified group.
+     * @return the star.
+     */
+    private static RegexNode star(RegexNode group) {
+        RegexNode repeated = unwrap(group);
+        return repeated.getType() == RegexNode.EMPTY ? repeated : RegexNode.star(repeated);
+    }
+
+    /**
+     * Removes the operators that only repeat or skip a group, which a star around it already does.
+     * (a*)*, (a?)* and (a*+b)* become a*, a* and (a+b)*.
+     * @param group the simplified group under a star.
+     * @return the group without those operators.
+     */
+    private static RegexNode unwrap(RegexNode group) {
+        switch (group.getType()) {
+            case RegexNode.STAR:
+            case RegexNode.OPTIONAL:
+                return unwrap(group.getGroup());
+            case RegexNode.REPEAT:
+                // any number of a{0,n} or a{1,n} is any number of a, but a{2,}* can't match a alone
+                return group.getMin() <= 1 ? unwrap(group.getGroup()) : group;
+            case RegexNode.UNION:
+                List<RegexNode> arms = new ArrayList<RegexNode>();
+                for (RegexNode arm : group.getChildren()) {
+                    arms.add(unwrap(arm));
+                }
+                // factoring can leave a single arm that is itself starred
+                RegexNode union = union(arms);
+                return union.getType() == RegexNode.UNION ? union : unwrap(union);
+            default:
+                return group;
+        }
+    }
+
+    /**
+     * Builds an option, unless the group can already match the empty string through its own operator.
+     * @param group the simplified group.
+     * @return the option.
+     */
+    private static RegexNode optional(RegexNode group) {
+        switch (group.getType()) {
+            case RegexNode.EMPTY:
+            case RegexNode.STAR:
+            case RegexNode.OPTIONAL:
+                return group;
+            case RegexNode.REPEAT:
+                return group.getMin() == 0 ? group : RegexNode.optional(group);
+            default:
+                return RegexNode.optional(group);
+        }
+    }
+
+    /**
+     * Builds a counted repetition, or the simpler operator it is the same as.
+     * @param group the simplified group.
+     * @param min the least number of repetitions.
+     * @param max the most number of repetitions, or -1 if there is no upper bound.
+     * @return the repetition.
+     */
+    private static RegexNode repeat(RegexNode group, int min, int max) {
+        if (max == 0 || group.getType() == RegexNode.EMPTY) {
+            return RegexNode.empty();
+        }
+        if (min == 1 && max == 1) {
+            return group;
+        }
+        if (min == 0 && max == -1) {
+            return star(group);
+        }
+        if (min == 0 && max == 1) {
+            return optional(group);
+        }
+        // any number of repetitions of a star are the star itself
+        return group.getType() == RegexNode.STAR ? group : RegexNode.repeat(group, min, max);
+    }
+}
@@ -0,0 +1,214 @@
+package edu.marist.costic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parses a regex into its syntax tree by recursive descent.
+ * Union '+' has the lowest precedence, then concatenation, then the postfix operators
+ * Kleene star '*', optional '?' and counted repetition '{m}', '{m,}' or '{m,n}'.
+ */
+final class RegexParser {
+    // repetition bounds are decimal numbers
+    private static final int RADIX = 10;
+
+    private final String regex;
+    private final Set<Character> alphabet;
+    // when true, any non-operator character in the regex is accepted and added to the alphabet
+    private final boolean openAlphabet;
+    private int currentChar;
+
+    /**
+     * Constructs a RegexParser.
+     * @param regex the regex string.
+     * @param alphabet the alphabet symbols are checked against.
+     * @param openAlphabet true if symbols from the regex should be added to the alphabet.
+     */
+    private RegexParser(String regex, Set<Character> alphabet, boolean openAlphabet) {
+        this.regex = regex;
+        this.alphabet = alphabet;
+        this.openAlphabet = openAlphabet;
+        currentChar = 0;
+    }
+
+    /**
+     * Parses a regex.
+     * @param regex the regex string.
+     * @param alphabet the alphabet symbols are checked against.
+     * @param openAlphabet true if symbols from the regex should be added to the alphabet.
+     * @return the syntax tree.
+     * @throws InvalidRegexException if the regex can't be parsed.
+     */
+    static RegexNode parse(String regex, Set<Character> alphabet, boolean openAlphabet) throws InvalidRegexException {
+        RegexParser parser = new RegexParser(regex, alphabet, openAlphabet);
+        RegexNode tree = parser.parseUnionGroup();
+        if (parser.currentChar < regex.length()) {
+            throw new InvalidRegexException("Unmatched right parenthesis");
+        }
+        return tree;
+    }
+
+    /**
+     * Parses a group of the regex where the lowest precedence operator is union, '+'.
+     * @return the syntax tree of the group.
+     * @throws InvalidRegexException
+     */
+    private RegexNode parseUnionGroup() throws InvalidRegexException {
+        List<RegexNode> arms = new ArrayList<RegexNode>();
+        arms.add(parseConcatGroup());
+
+        while (currentChar < regex.length() && regex.charAt(currentChar) != ')') {
+            if (regex.charAt(currentChar) != '+') {
+                throw new InvalidRegexException("Invalid characters beyond regex");
+            }
+            // the next character is a '+' so move past it
+            currentChar++;
+            arms.add(parseConcatGroup());
+        }
+        return arms.size() == 1 ? arms.get(0) : RegexNode.union(arms);
+    }
+
+    /**
+     * Parses a group of the regex where the lowest precedence operator is concatenation.
+     * @return the syntax tree of the group.
+     * @throws InvalidRegexException
+     */
+    private RegexNode parseConcatGroup() throws InvalidRegexException {
+        List<RegexNode> parts = new ArrayList<RegexNode>();
+        parts.add(parseKleeneGroup());
+
+        // there is more to concat until the end of the enclosing group
+        while (currentChar < regex.length() && regex.charAt(currentChar) != ')' && regex.charAt(currentChar) != '+') {
+            parts.add(parseKleeneGroup());
+        }
+        return parts.size() == 1 ? parts.get(0) : RegexNode.concat(parts);
+    }
+
+    /**
+     * Parses a group of the regex where the lowest precedence operators are the postfix operators.
+     * @return the syntax tree of the group.
+     * @throws InvalidRegexException
+     */
+    private RegexNode parseKleeneGroup() throws InvalidRegexException {
+        RegexNode group = parseSymbolGroup();
+
+        // postfix operators apply to everything before them, so a{2}* repeats a{2}
+        while (currentChar < regex.length() && isPostfixOperator(regex.charAt(currentChar))) {
+            group = parsePostfixOperator(group);
+        }
+        return group;
+    }
+
+    /**
+     * Parses one postfix operator and applies it to the group before it.
+     * @param group the syntax tree of the group.
+     * @return the syntax tree of the group with the operator applied.
+     * @throws InvalidRegexException
+     */
+    private RegexNode parsePostfixOperator(RegexNode group) throws InvalidRegexException {
+        char operator = regex.charAt(currentChar);
+        // move past the operator
+        currentChar++;
+
+        if (operator == '*') {
+            return RegexNode.star(group);
+        } else if (operator == '?') {
+            return RegexNode.optional(group);
+        }
+
+        int min = parseBound();
+        int max = min;
+        if (currentChar < regex.length() && regex.charAt(currentChar) == ',') {
+            currentChar++;
+            // {m,} has no upper bound
+            max = currentChar < regex.length() && regex.charAt(currentChar) == '}' ? -1 : parseBound();
+        }
+        if (currentChar >= regex.length() || regex.charAt(currentChar) != '}') {
+            throw new InvalidRegexException("Missing right brace");
+        }
+        currentChar++;
+
+        if (max != -1 && max < min) {
+            throw new InvalidRegexException("Repetition has a larger minimum than maximum");
+        }
+        return RegexNode.repeat(group, min, max);
+    }
+
+    /**
+     * Parses a repetition bound, a decimal number.
+     * @return the bound.
+     * @throws InvalidRegexException if there is no number or it is too large.
+     */
+    private int parseBound() throws InvalidRegexException {
+        int boundStart = currentChar;
+        long bound = 0;
+        while (currentChar < regex.length() && Character.isDigit(regex.charAt(currentChar))) {
+            bound = bound * RADIX + Character.digit(regex.charAt(currentChar), RADIX);
+            if (bound > Integer.MAX_VALUE) {
+                throw new InvalidRegexException("Repetition bound is too large");
+            }
+            currentChar++;
+        }
+        if (currentChar == boundStart) {
+            throw new InvalidRegexException("Missing repetition bound");
+        }
+        return (int) bound;
+    }
+
+    /**
+     * Parses a group of the regex made up of either a symbol or another regex string inside of parenthesis.
+     * @return the syntax tree of the group.
+     * @throws InvalidRegexException
+     */
+    private RegexNode parseSymbolGroup() throws InvalidRegexException {
+        if (currentChar >= regex.length()) {
+            throw new InvalidRegexException("Reached end of regex expecting more characters");
+        }
+        if (regex.charAt(currentChar) == '(') {
+            // the next character is a '(' so move past it
+            currentChar++;
+
+            // call the top level regex expression
+            RegexNode innerRegex = parseUnionGroup();
+
+            if (currentChar < regex.length() && regex.charAt(currentChar) == ')') {
+                currentChar++;
+            } else {
+                throw new InvalidRegexException("Missing right parenthesis");
+            }
+
+            return innerRegex;
+        }
+
+        char symbol = regex.charAt(currentChar);
+        // with an open alphabet, every symbol that is not an operator becomes part of the alphabet
+        if (openAlphabet && !isOperator(symbol)) {
+            alphabet.add(symbol);
+        }
+
+        if (!alphabet.contains(symbol)) {
+            throw new InvalidRegexException("Character not in recognized alphabet");
+        }
+        currentChar++;
+        return RegexNode.symbol(symbol);
+    }
+
+    /**
+     * Checks if a character is one of the regex operators.
+     * @param c the character to check.
+     * @return true if c is an operator.
+     */
+    private static boolean isOperator(char c) {
+        return c == '(' || c == ')' || c == '+' || isPostfixOperator(c) || c == '}';
+    }
+
+    /**
+     * Checks if a character starts one of the postfix operators.
+     * @param c the character to check.
+     * @return true if c is '*', '?' or '{'.
+     */
+    private static boolean isPostfixOperator(char c) {
+        return c == '*' || c == '?' || c == '{';
+    }
+}
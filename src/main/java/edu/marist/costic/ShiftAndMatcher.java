@@ -0,0 +1,360 @@
+package edu.marist.costic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Matches with the Glushkov automaton of a regex, simulated bit-parallel in the style of Shift-And.
+ *
+ * The Glushkov automaton has one state per symbol of the regex, its position, and no epsilon transitions:
+ * every transition into a position reads that position's symbol. So the set of positions reached so far fits in
+ * the bits of a long, and one step is the positions following any of them, masked by the positions of the
+ * symbol read. Positions are numbered from left to right, so most of them are followed by one of the next few,
+ * or loop onto themselves, and each of those distances is a single shift of the whole set. Only the other follow
+ * edges, like the backward ones of stars over longer groups, are looked up in tables indexed by a byte of the set.
+ *
+ * Building it takes one walk over the syntax tree, with no subset construction, so it suits regexes of at most
+ * 64 symbols once counted repetitions are written out.
+ */
+final class ShiftAndMatcher implements Matcher {
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final int TABLE_SIZE = 1 << Byte.SIZE;
+    // follow edges up to this many positions ahead are shifts, enough for the arms of short unions
+    private static final int MAX_SHIFT = 3;
+
+    // the positions each symbol can be read at, indexed by the symbol
+    private final long[] masks;
+    // the positions the first symbol can be read at
+    private final long first;
+    // the positions a match can end at
+    private final long last;
+    // true if the empty string is accepted
+    private final boolean nullable;
+    // the positions followed by themselves, and by the position one, two and three ahead
+    private final long stay;
+    private final long forward1;
+    private final long forward2;
+    private final long forward3;
+    // for each byte of the state holding positions with other follow edges, where the byte starts and its table
+    private final int[] tableShifts;
+    private final long[][] tables;
+
+    /**
+     * Constructs a ShiftAndMatcher from a built Glushkov automaton.
+     * @param glushkov the automaton.
+     * @param regex the fragment of the whole regex.
+     */
+    private ShiftAndMatcher(Glushkov glushkov, Fragment regex) {
+        first = regex.first;
+        last = regex.last;
+        nullable = regex.nullable;
+
+        char maxSymbol = 0;
+        for (int position = 0; position < glushkov.positions; position++) {
+            maxSymbol = (char) Math.max(maxSymbol, glushkov.symbols[position]);
+        }
+        masks = new long[maxSymbol + 1];
+
+        // shifted[d] holds the positions followed by the one d ahead
+        long[] shifted = new long[MAX_SHIFT + 1];
+        long[] jumps = new long[Long.SIZE];
+        int tableCount = 0;
+        for (int position = 0; position < glushkov.positions; position++) {
+            masks[glushkov.symbols[position]] |= 1L << position;
+
+            // the edges covered by the shifts don't need a table
+            long jump = glushkov.follow[position];
+            for (int distance = 0; distance <= MAX_SHIFT && position + distance < Long.SIZE; distance++) {
+                long next = 1L << (position + distance);
+                if ((jump & next) != 0) {
+                    shifted[distance] |= 1L << position;
+                    jump &= ~next;
+                }
+            }
+            jumps[position] = jump;
+        }
+        stay = shifted[0];
+        forward1 = shifted[1];
+        forward2 = shifted[2];
+        forward3 = shifted[MAX_SHIFT];
+
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            if (hasJumps(jumps, shift)) {
+                tableCount++;
+            }
+        }
+        tableShifts = new int[tableCount];
+        tables = new long[tableCount][];
+        int table = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            if (hasJumps(jumps, shift)) {
+                tableShifts[table] = shift;
+                tables[table] = jumpTable(jumps, shift);
+                table++;
+            }
+        }
+    }
+
+    /**
+     * Builds the matcher for the simplified syntax tree of an NFA's regex.
+     * @param nfa the NFA.
+     * @return the matcher, or null if the regex has more than 64 positions or the epsilon symbol is used,
+     *     since a space is matched through the NFA's epsilon transitions, which have no Glushkov counterpart.
+     */
+    static ShiftAndMatcher compile(NFA nfa) {
+        RegexNode tree = nfa.getSyntaxTree();
+        if (tree.usesEpsilon() || nfa.getAlphabet().contains(StateSymbolPair.EPSILON)
+                || countPositions(tree) > Long.SIZE) {
+            return null;
+        }
+        Glushkov glushkov = new Glushkov();
+        return new ShiftAndMatcher(glushkov, glushkov.build(tree));
+    }
+
+    /**
+     * Counts the positions of a tree, writing out counted repetitions.
+     * @param node the root of the tree.
+     * @return the number of positions, or a number just past 64 if there are more.
+     */
+    private static long countPositions(RegexNode node) {
+        if (node.getType() == RegexNode.SYMBOL) {
+            return 1;
+        }
+        long count = 0;
+        for (RegexNode child : node.getChildren()) {
+            count += countPositions(child);
+        }
+        if (node.getType() == RegexNode.REPEAT) {
+            long copies = node.getMax() == -1 ? Math.max(node.getMin(), 1) : node.getMax();
+            count *= copies;
+        }
+        // stop growing once it is too many, so nested repetitions can't overflow
+        return Math.min(count, Long.SIZE + 1);
+    }
+
+    /**
+     * Checks if any position in one byte of the state has follow edges the shift doesn't cover.
+     * @param jumps the other follow edges of each position.
+     * @param shift the first position of the byte.
+     * @return true if the byte needs a table.
+     */
+    private static boolean hasJumps(long[] jumps, int shift) {
+        for (int position = shift; position < shift + Byte.SIZE; position++) {
+            if (jumps[position] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the table of the other follow edges of every combination of the positions in one byte of the state.
+     * @param jumps the other follow edges of each position.
+     * @param shift the first position of the byte.
+     * @return the table, indexed by the byte.
+     */
+    private static long[] jumpTable(long[] jumps, int shift) {
+        long[] table = new long[TABLE_SIZE];
+        for (int value = 1; value < TABLE_SIZE; value++) {
+            // each combination is a smaller one with its lowest position added
+            int lowest = Integer.numberOfTrailingZeros(value);
+            table[value] = table[value & (value - 1)] | jumps[shift + lowest];
+        }
+        return table;
+    }
+
+    /**
+     * Gets the positions a symbol can be read at.
+     * @param symbol the symbol.
+     * @return the positions.
+     */
+    private long mask(char symbol) {
+        return symbol < masks.length ? masks[symbol] : 0;
+    }
+
+    /**
+     * Gets every position following any of a set of positions.
+     * @param state the set of positions.
+     * @return the following positions.
+     */
+    private long follow(long state) {
+        long next = (state & stay) | (state & forward1) << 1 | (state & forward2) << 2
+                | (state & forward3) << MAX_SHIFT;
+        for (int table = 0; table < tables.length; table++) {
+            next |= tables[table][(int) (state >>> tableShifts[table]) & BYTE_MASK];
+        }
+        return next;
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        int end = input.length();
+        if (end == 0) {
+            return nullable;
+        }
+        long state = first & mask(input.charAt(0));
+        for (int i = 1; i < end && state != 0; i++) {
+            state = follow(state) & mask(input.charAt(i));
+        }
+        return (state & last) != 0;
+    }
+
+    @Override
+    public boolean matches(byte[] input, int offset, int length) {
+        if (length == 0) {
+            return nullable;
+        }
+        int end = offset + length;
+        long state = first & mask((char) (input[offset] & BYTE_MASK));
+        for (int i = offset + 1; i < end && state != 0; i++) {
+            state = follow(state) & mask((char) (input[i] & BYTE_MASK));
+        }
+        return (state & last) != 0;
+    }
+
+    @Override
+    public boolean matches(ByteBuffer input) {
+        int end = input.limit();
+        int i = input.position();
+        if (i == end) {
+            return nullable;
+        }
+        long state = first & mask((char) (input.get(i) & BYTE_MASK));
+        for (i++; i < end && state != 0; i++) {
+            state = follow(state) & mask((char) (input.get(i) & BYTE_MASK));
+        }
+        return (state & last) != 0;
+    }
+
+    /**
+     * The positions a part of a regex can start and end at, and whether it can match the empty string.
+     */
+    private static final class Fragment {
+
+        private final long first;
+        private final long last;
+        private final boolean nullable;
+
+        /**
+         * Constructs a Fragment.
+         * @param first the positions a match can start at.
+         * @param last the positions a match can end at.
+         * @param nullable true if the empty string is matched.
+         */
+        Fragment(long first, long last, boolean nullable) {
+            this.first = first;
+            this.last = last;
+            this.nullable = nullable;
+        }
+
+        /**
+         * Gets this fragment, also matching the empty string.
+         * @return the optional fragment.
+         */
+        Fragment optional() {
+            return new Fragment(first, last, true);
+        }
+    }
+
+    /**
+     * Numbers the symbols of a syntax tree from left to right and finds the positions that can follow each one.
+     */
+    private static final class Glushkov {
+
+        private final char[] symbols = new char[Long.SIZE];
+        private final long[] follow = new long[Long.SIZE];
+        private int positions;
+
+        /**
+         * Builds the part of the automaton for a node.
+         * @param node the node.
+         * @return the fragment of the node.
+         */
+        Fragment build(RegexNode node) {
+            switch (node.getType()) {
+                case RegexNode.EMPTY:
+                    return new Fragment(0, 0, true);
+                case RegexNode.SYMBOL:
+                    long position = 1L << positions;
+                    symbols[positions] = node.getSymbol();
+                    positions++;
+                    return new Fragment(position, position, false);
+                case RegexNode.CONCAT:
+                    Fragment concat = build(node.getChildren().get(0));
+                    for (RegexNode part : node.getChildren().subList(1, node.getChildren().size())) {
+                        concat = concat(concat, build(part));
+                    }
+                    return concat;
+                case RegexNode.UNION:
+                    Fragment union = build(node.getChildren().get(0));
+                    for (RegexNode arm : node.getChildren().subList(1, node.getChildren().size())) {
+                        Fragment next = build(arm);
+                        union = new Fragment(union.first | next.first, union.last | next.last,
+                                union.nullable || next.nullable);
+                    }
+                    return union;
+                case RegexNode.STAR:
+                    Fragment group = build(node.getGroup());
+                    link(group.last, group.first);
+                    return group.optional();
+                case RegexNode.OPTIONAL:
+                    return build(node.getGroup()).optional();
+                default:
+                    return repeat(node.getGroup(), node.getMin(), node.getMax());
+            }
+        }
+
+        /**
+         * Builds a counted repetition by writing out its copies. {m,} loops the last of its copies back onto itself,
+         * and the copies past the minimum of {m,n} are each optional.
+         * @param group the group that is repeated.
+         * @param min the least number of repetitions.
+         * @param max the most number of repetitions, or -1 if there is no upper bound.
+         * @return the fragment of the repetition.
+         */
+        private Fragment repeat(RegexNode group, int min, int max) {
+            if (max == 0) {
+                return new Fragment(0, 0, true);
+            }
+            int required = Math.max(min, 1);
+            Fragment lastCopy = build(group);
+            Fragment repeated = lastCopy;
+            for (int i = 1; i < required; i++) {
+                lastCopy = build(group);
+                repeated = concat(repeated, lastCopy);
+            }
+
+            if (max == -1) {
+                link(lastCopy.last, lastCopy.first);
+            } else {
+                for (int i = required; i < max; i++) {
+                    repeated = concat(repeated, build(group).optional());
+                }
+            }
+            return min == 0 ? repeated.optional() : repeated;
+        }
+
+        /**
+         * Joins two fragments one after the other.
+         * @param left the fragment matched first.
+         * @param right the fragment matched second.
+         * @return the fragment of the concatenation.
+         */
+        private Fragment concat(Fragment left, Fragment right) {
+            link(left.last, right.first);
+            return new Fragment(left.first | (left.nullable ? right.first : 0),
+                    right.last | (right.nullable ? left.last : 0), left.nullable && right.nullable);
+        }
+
+        /**
+         * Lets every one of a set of positions be followed by every one of another.
+         * @param from the positions.
+         * @param to the positions that can follow them.
+         */
+        private void link(long from, long to) {
+            for (long rest = from; rest != 0; rest &= rest - 1) {
+                follow[Long.numberOfTrailingZeros(rest)] |= to;
+            }
+        }
+    }
+}
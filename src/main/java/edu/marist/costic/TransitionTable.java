@@ -0,0 +1,35 @@
+package edu.marist.costic;
+
+/**
+ * The transitions and end states of a DFA, stored as one row of next states per state
+ * and one column per symbol class. A next state of -1 is the dead state.
+ */
+abstract class TransitionTable {
+
+    /**
+     * Gets the number of states in the table.
+     * @return the number of states.
+     */
+    abstract int getStateCount();
+
+    /**
+     * Gets the number of symbol classes, which is the number of columns in each row.
+     * @return the number of symbol classes.
+     */
+    abstract int getClassCount();
+
+    /**
+     * Gets the state reached from a state on a symbol class.
+     * @param state the current state.
+     * @param symbolClass the symbol class.
+     * @return the next state, or -1 for the dead state.
+     */
+    abstract int get(int state, int symbolClass);
+
+    /**
+     * Checks if a state is an end state.
+     * @param state the state.
+     * @return true if the state is an end state.
+     */
+    abstract boolean isAccepting(int state);
+}
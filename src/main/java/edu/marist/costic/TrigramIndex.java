@@ -0,0 +1,390 @@
+package edu.marist.costic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An on disk index of which trigrams, sequences of three bytes other than spaces, occur in each block of a file.
+ * Blocks hold whole records, so a regex only has to be matched against the blocks holding every trigram
+ * a match would need, see {@link TrigramQuery}.
+ *
+ * An index file holds: a magic number and format version, the size and modification time of the indexed file,
+ * the record length and delimiter the blocks were split with, the block offsets, the sorted trigrams,
+ * and for each trigram the list of blocks holding it.
+ */
+final class TrigramIndex {
+
+    private static final int MAGIC = 0x47524958;
+    private static final int VERSION = 2;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int TRIGRAM_MASK = 0xFFFFFF;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final int blockCount;
+    private final int trigramCount;
+
+    // the mapped index file, and where each of its sections starts
+    private final ByteBuffer index;
+    private final int blockOffsets;
+    private final int trigrams;
+    private final int postingStarts;
+    private final int postings;
+
+    /**
+     * Constructs a TrigramIndex over a mapped index file, positioned at the block count.
+     * @param index the mapped index file.
+     */
+    private TrigramIndex(ByteBuffer index) {
+        this.index = index;
+        blockCount = index.getInt();
+        blockOffsets = index.position();
+        index.position(blockOffsets + (blockCount + 1) * Long.BYTES);
+        trigramCount = index.getInt();
+        trigrams = index.position();
+        postingStarts = trigrams + trigramCount * Integer.BYTES;
+        postings = postingStarts + (trigramCount + 1) * Integer.BYTES;
+    }
+
+    /**
+     * Opens an index file, if it indexes the current contents of a file split into records the same way.
+     * @param indexFile the index file.
+     * @param file the indexed file.
+     * @param delimiter how the file is split into records.
+     * @return the index, or null if the index file doesn't exist, is out of date or was split differently.
+     * @throws IOException if the index file can't be read.
+     */
+    static TrigramIndex open(File indexFile, File file, RecordDelimiter delimiter) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] delimiterBytes = delimiterBytes(delimiter);
+
+            // magic, version, file size, modification time, record length and delimiter length
+            int headerSize = 2 * Integer.BYTES + 2 * Long.BYTES + 2 * Integer.BYTES + delimiterBytes.length;
+            if (index.remaining() < headerSize + Integer.BYTES
+                    || index.getInt() != MAGIC || index.getInt() != VERSION
+                    || index.getLong() != file.length() || index.getLong() != file.lastModified()
+                    || index.getInt() != delimiter.getRecordLength() || index.getInt() != delimiterBytes.length) {
+                return null;
+            }
+            for (byte b : delimiterBytes) {
+                if (index.get() != b) {
+                    return null;
+                }
+            }
+            return new TrigramIndex(index);
+        }
+    }
+
+    /**
+     * Builds the index of a file and writes it to an index file. The index file is replaced atomically,
+     * so a search never reads a partly written index.
+     * @param file the file to index.
+     * @param delimiter how the file is split into records, blocks only end after a complete record.
+     * @param indexFile the index file.
+     * @return the number of blocks in the index.
+     * @throws IOException if the file can't be read or the index file can't be written.
+     */
+    static int build(File file, RecordDelimiter delimiter, File indexFile) throws IOException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        byte[] delimiterBytes = delimiterBytes(delimiter);
+        int recordLength = delimiter.getRecordLength();
+
+        Map<Integer, PostingList> postingLists = new HashMap<Integer, PostingList>();
+        PostingList offsets = new PostingList();
+        // the trigrams seen in the current block, so each is only listed once per block
+        BitSet seen = new BitSet(TRIGRAM_MASK + 1);
+        PostingList seenTrigrams = new PostingList();
+
+        // the last bytes read, in a ring, used to find the end of a record
+        byte[] recent = new byte[Math.max(delimiterBytes.length, 1)];
+        byte lastDelimiterByte = delimiterBytes.length > 0 ? delimiterBytes[delimiterBytes.length - 1] : 0;
+        long recordBytes = 0;
+        int blockBytes = 0;
+        // the bytes of the current block that trigrams are made of, spaces are left out
+        int trigramBytes = 0;
+        int trigram = 0;
+        long position = 0;
+        int blockNumber = 0;
+        offsets.addOffset(0);
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[BLOCK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    recent[(int) (recordBytes % recent.length)] = b;
+                    position++;
+                    blockBytes++;
+                    recordBytes++;
+
+                    // a space in the input can be matched by any epsilon transition, so a match with its spaces left
+                    // out is still a match, and only the trigrams of the other bytes are certain to be in it
+                    boolean space = b == StateSymbolPair.EPSILON;
+                    if (!space) {
+                        trigram = ((trigram << Byte.SIZE) | (b & BYTE_MASK)) & TRIGRAM_MASK;
+                        trigramBytes++;
+                    }
+                    if (!space && trigramBytes >= TrigramQuery.TRIGRAM_LENGTH && !seen.get(trigram)) {
+                        seen.set(trigram);
+                        seenTrigrams.add(trigram);
+                        PostingList list = postingLists.get(trigram);
+                        if (list == null) {
+                            list = new PostingList();
+                            postingLists.put(trigram, list);
+                        }
+                        list.add(blockNumber);
+                    }
+
+                    boolean recordEnd;
+                    if (recordLength > 0) {
+                        recordEnd = recordBytes == recordLength;
+                    } else {
+                        // the same first delimiter after the record start that the splitter finds
+                        recordEnd = b == lastDelimiterByte && recordBytes >= delimiterBytes.length
+                                && endsWithDelimiter(recent, recordBytes, delimiterBytes);
+                    }
+                    if (recordEnd) {
+                        recordBytes = 0;
+                        if (blockBytes >= BLOCK_SIZE) {
+                            // start a new block after this record
+                            offsets.addOffset(position);
+                            blockNumber++;
+                            blockBytes = 0;
+                            trigramBytes = 0;
+                            for (int j = 0; j < seenTrigrams.size; j++) {
+                                seen.clear(seenTrigrams.values[j]);
+                            }
+                            seenTrigrams.size = 0;
+                        }
+                    }
+                }
+            }
+        }
+        if (blockBytes > 0 || blockNumber == 0) {
+            offsets.addOffset(position);
+            blockNumber++;
+        }
+
+        write(indexFile, size, lastModified, recordLength, delimiterBytes, offsets, postingLists);
+        return blockNumber;
+    }
+
+    /**
+     * Writes an index file through a temporary file next to it.
+     * @param indexFile the index file.
+     * @param size the size of the indexed file.
+     * @param lastModified the modification time of the indexed file.
+     * @param recordLength the length of fixed length records, or 0.
+     * @param delimiterBytes the record delimiter.
+     * @param offsets the block offsets, as pairs of ints.
+     * @param postingLists the blocks holding each trigram.
+     * @throws IOException if the file can't be written.
+     */
+    private static void write(File indexFile, long size, long lastModified, int recordLength, byte[] delimiterBytes,
+            PostingList offsets, Map<Integer, PostingList> postingLists) throws IOException {
+        int[] sorted = new int[postingLists.size()];
+        int count = 0;
+        for (int trigram : postingLists.keySet()) {
+            sorted[count++] = trigram;
+        }
+        Arrays.sort(sorted);
+
+        Path target = indexFile.getAbsoluteFile().toPath();
+        Path temporary = target.resolveSibling(indexFile.getName() + "." + System.nanoTime() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeInt(recordLength);
+            out.writeInt(delimiterBytes.length);
+            out.write(delimiterBytes);
+
+            out.writeInt(offsets.size / 2 - 1);
+            for (int i = 0; i < offsets.size; i++) {
+                out.writeInt(offsets.values[i]);
+            }
+
+            out.writeInt(sorted.length);
+            for (int trigram : sorted) {
+                out.writeInt(trigram);
+            }
+            int start = 0;
+            for (int trigram : sorted) {
+                out.writeInt(start);
+                start += postingLists.get(trigram).size;
+            }
+            out.writeInt(start);
+            for (int trigram : sorted) {
+                PostingList list = postingLists.get(trigram);
+                for (int i = 0; i < list.size; i++) {
+                    out.writeInt(list.values[i]);
+                }
+            }
+        }
+
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Checks if the last bytes of a record are the delimiter.
+     * @param recent the last bytes of the record, in a ring as long as the delimiter.
+     * @param recordBytes the number of bytes in the record so far.
+     * @param delimiterBytes the delimiter.
+     * @return true if the record ends with the delimiter.
+     */
+    private static boolean endsWithDelimiter(byte[] recent, long recordBytes, byte[] delimiterBytes) {
+        for (int j = 0; j < delimiterBytes.length; j++) {
+            long recordIndex = recordBytes - delimiterBytes.length + j;
+            if (recent[(int) (recordIndex % recent.length)] != delimiterBytes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the delimiter bytes stored in an index file.
+     * @param delimiter how records are split.
+     * @return the delimiter bytes, empty for fixed length records.
+     */
+    private static byte[] delimiterBytes(RecordDelimiter delimiter) {
+        return delimiter.getDelimiter() == null ? new byte[0] : delimiter.getDelimiter();
+    }
+
+    /**
+     * Gets the number of blocks.
+     * @return the number of blocks.
+     */
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Gets the offset in the indexed file where a block starts.
+     * @param block the block number, or the block count for the end of the file.
+     * @return the offset.
+     */
+    long getBlockStart(int block) {
+        return index.getLong(blockOffsets + block * Long.BYTES);
+    }
+
+    /**
+     * Gets the blocks holding a trigram.
+     * @param trigram the trigram.
+     * @return the set of block numbers.
+     */
+    BitSet getBlocks(int trigram) {
+        BitSet blocks = new BitSet(blockCount);
+
+        // binary search the sorted trigrams
+        int low = 0;
+        int high = trigramCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = index.getInt(trigrams + middle * Integer.BYTES);
+            if (value < trigram) {
+                low = middle + 1;
+            } else if (value > trigram) {
+                high = middle - 1;
+            } else {
+                int start = index.getInt(postingStarts + middle * Integer.BYTES);
+                int end = index.getInt(postingStarts + (middle + 1) * Integer.BYTES);
+                for (int i = start; i < end; i++) {
+                    blocks.set(index.getInt(postings + i * Integer.BYTES));
+                }
+                break;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Reads some blocks of the indexed file and passes their bytes to a splitter, one block after another.
+     * @param file the indexed file.
+     * @param blocks the numbers of the blocks to read.
+     * @param splitter the splitter to pass the bytes to.
+     * @throws IOException if the file can't be read.
+     */
+    void readBlocks(File file, BitSet blocks, RecordSplitter splitter) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int block = blocks.nextSetBit(0); block >= 0 && block < blockCount;
+                    block = blocks.nextSetBit(block + 1)) {
+                long position = getBlockStart(block);
+                long end = getBlockStart(block + 1);
+
+                // a block ends after a complete record, but may be longer than the buffer
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Input file is shorter than its index");
+                    }
+                    splitter.feed(buffer.array(), 0, read);
+                    position += read;
+                }
+                splitter.flush();
+            }
+        }
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static final class PostingList {
+
+        private static final int INITIAL_SIZE = 4;
+
+        private int[] values = new int[INITIAL_SIZE];
+        private int size;
+
+        /**
+         * Adds an int to the end of the list.
+         * @param value the int.
+         */
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Adds a long to the end of the list, as its high and low ints.
+         * @param value the long.
+         */
+        void addOffset(long value) {
+            add((int) (value >>> Integer.SIZE));
+            add((int) value);
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package edu.marist.costic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A boolean query over trigrams that every string accepted by a regex has to satisfy,
+ * found the same way as in Russ Cox's codesearch.
+ *
+ * The simplified syntax tree of the regex is analysed bottom up. For each part it is known which exact strings
+ * it can match (while there are few), or else which strings its matches start and end with, along with a query
+ * the matches have to satisfy.
+ * Concatenations join these sets, and once a set grows too large its trigrams are moved into the query.
+ * The query is only a necessary condition, so blocks it selects still have to be matched by the DFA.
+ */
+final class TrigramQuery {
+
+    static final int TRIGRAM_LENGTH = 3;
+    private static final int BYTE_MASK = 0xFF;
+    // the most strings kept in an exact, prefix or suffix set
+    private static final int MAX_SET_SIZE = 16;
+    // the most copies of a counted repetition that are analysed
+    private static final int MAX_COPIES = 3;
+
+    private static final int ALL = 0;
+    private static final int NONE = 1;
+    private static final int TRIGRAM = 2;
+    private static final int AND = 3;
+    private static final int OR = 4;
+
+    private final int op;
+    private final int trigram;
+    private final List<TrigramQuery> operands;
+
+    /**
+     * Constructs a TrigramQuery.
+     * @param op the operation, one of ALL, NONE, TRIGRAM, AND or OR.
+     * @param trigram the trigram for a TRIGRAM query.
+     * @param operands the operands of an AND or OR query.
+     */
+    private TrigramQuery(int op, int trigram, List<TrigramQuery> operands) {
+        this.op = op;
+        this.trigram = trigram;
+        this.operands = operands;
+    }
+
+    /**
+     * The query every block satisfies.
+     * @return the query.
+     */
+    static TrigramQuery all() {
+        return new TrigramQuery(ALL, 0, null);
+    }
+
+    /**
+     * The query no block satisfies.
+     * @return the query.
+     */
+    static TrigramQuery none() {
+        return new TrigramQuery(NONE, 0, null);
+    }
+
+    /**
+     * The query satisfied by the blocks holding a trigram.
+     * @param trigram the three bytes of the trigram packed into an int.
+     * @return the query.
+     */
+    static TrigramQuery trigram(int trigram) {
+        return new TrigramQuery(TRIGRAM, trigram, null);
+    }
+
+    /**
+     * Derives the query for a regex.
+     * @param regex the regex string, already known to be valid.
+     * @return the query, or the query every block satisfies if the regex is invalid after all.
+     */
+    static TrigramQuery fromRegex(String regex) {
+        try {
+            Set<Character> alphabet = new HashSet<Character>();
+            RegexNode tree = RegexParser.parse(regex, alphabet, true);
+            return analyze(RegexOptimizer.optimize(tree, alphabet)).toQuery();
+        } catch (InvalidRegexException e) {
+            return all();
+        }
+    }
+
+    /**
+     * Combines two queries that both have to be satisfied.
+     * @param other the other query.
+     * @return the combined query.
+     */
+    TrigramQuery and(TrigramQuery other) {
+        if (op == ALL || other.op == NONE) {
+            return other;
+        }
+        if (other.op == ALL || op == NONE) {
+            return this;
+        }
+        return combine(AND, other);
+    }
+
+    /**
+     * Combines two queries of which either has to be satisfied.
+     * @param other the other query.
+     * @return the combined query.
+     */
+    TrigramQuery or(TrigramQuery other) {
+        if (op == NONE || other.op == ALL) {
+            return other;
+        }
+        if (other.op == NONE || op == ALL) {
+            return this;
+        }
+        return combine(OR, other);
+    }
+
+    /**
+     * Finds the blocks of an index that satisfy the query.
+     * @param index the trigram index.
+     * @return the set of block numbers.
+     */
+    BitSet candidates(TrigramIndex index) {
+        switch (op) {
+            case ALL:
+                BitSet all = new BitSet(index.getBlockCount());
+                all.set(0, index.getBlockCount());
+                return all;
+            case NONE:
+                return new BitSet();
+            case TRIGRAM:
+                return index.getBlocks(trigram);
+            default:
+                BitSet blocks = operands.get(0).candidates(index);
+                for (TrigramQuery operand : operands.subList(1, operands.size())) {
+                    if (op == AND) {
+                        blocks.and(operand.candidates(index));
+                    } else {
+                        blocks.or(operand.candidates(index));
+                    }
+                }
+                return blocks;
+        }
+    }
+
+    /**
+     * Combines two queries with AND or OR, flattening operands that use the same operation
+     * and leaving out repeated operands.
+     * @param combinedOp the operation.
+     * @param other the other query.
+     * @return the combined query.
+     */
+    private TrigramQuery combine(int combinedOp, TrigramQuery other) {
+        List<TrigramQuery> combined = new ArrayList<TrigramQuery>();
+        for (TrigramQuery query : new TrigramQuery[] {this, other}) {
+            for (TrigramQuery operand : query.op == combinedOp ? query.operands : Arrays.asList(query)) {
+                if (!combined.contains(operand)) {
+                    combined.add(operand);
+                }
+            }
+        }
+        return combined.size() == 1 ? combined.get(0) : new TrigramQuery(combinedOp, 0, combined);
+    }
+
+    /**
+     * Gets the query satisfied by blocks holding any one of a set of strings.
+     * @param strings the strings.
+     * @return the query.
+     */
+    private static TrigramQuery anyOf(Set<String> strings) {
+        TrigramQuery query = none();
+        for (String string : strings) {
+            query = query.or(allTrigrams(string));
+        }
+        return query;
+    }
+
+    /**
+     * Gets the query satisfied by blocks holding every trigram of a string.
+     * @param string the string.
+     * @return the query, which is ALL if the string is shorter than a trigram.
+     */
+    private static TrigramQuery allTrigrams(String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        Set<Integer> seen = new HashSet<Integer>();
+        TrigramQuery query = all();
+        for (int i = 0; i + TRIGRAM_LENGTH <= bytes.length; i++) {
+            int packed = pack(bytes[i], bytes[i + 1], bytes[i + 2]);
+            if (seen.add(packed)) {
+                query = query.and(trigram(packed));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Packs three bytes into a trigram.
+     * @param first the first byte.
+     * @param second the second byte.
+     * @param third the third byte.
+     * @return the trigram.
+     */
+    static int pack(byte first, byte second, byte third) {
+        return (first & BYTE_MASK) << (2 * Byte.SIZE) | (second & BYTE_MASK) << Byte.SIZE | (third & BYTE_MASK);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TrigramQuery)) {
+            return false;
+        }
+        TrigramQuery query = (TrigramQuery) other;
+        return op == query.op && trigram == query.trigram && Objects.equals(operands, query.operands);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(op, trigram, operands);
+    }
+
+    @Override
+    public String toString() {
+        switch (op) {
+            case ALL:
+                return "ALL";
+            case NONE:
+                return "NONE";
+            case TRIGRAM:
+                byte[] bytes = {(byte) (trigram >>> (2 * Byte.SIZE)), (byte) (trigram >>> Byte.SIZE), (byte) trigram};
+                return "\"" + new String(bytes, StandardCharsets.UTF_8) + "\"";
+            default:
+                StringBuilder builder = new StringBuilder("(");
+                for (int i = 0; i < operands.size(); i++) {
+                    if (i > 0) {
+                        builder.append(op == AND ? " AND " : " OR ");
+                    }
+                    builder.append(operands.get(i));
+                }
+                return builder.append(")").toString();
+        }
+    }
+
+    /**
+     * Analyses a node of a syntax tree, building up the info of each part from the bottom up.
+     * @param node the node.
+     * @return the info of the node.
+     */
+    private static Info analyze(RegexNode node) {
+        switch (node.getType()) {
+            case RegexNode.EMPTY:
+                return Info.literal("");
+            case RegexNode.SYMBOL:
+                // the index leaves spaces out of its trigrams, and a match with its spaces left out is still a match
+                if (node.getSymbol() == StateSymbolPair.EPSILON) {
+                    return Info.literal("");
+                }
+                return Info.literal(String.valueOf(node.getSymbol()));
+            case RegexNode.CONCAT:
+                Info concat = Info.literal("");
+                for (RegexNode part : node.getChildren()) {
+                    concat = concat.concat(analyze(part));
+                }
+                return concat;
+            case RegexNode.UNION:
+                Info union = analyze(node.getChildren().get(0));
+                for (RegexNode arm : node.getChildren().subList(1, node.getChildren().size())) {
+                    union = union.union(analyze(arm));
+                }
+                return union;
+            case RegexNode.STAR:
+                return Info.anything();
+            case RegexNode.OPTIONAL:
+                return analyze(node.getGroup()).optional();
+            default:
+                return repeat(analyze(node.getGroup()), node.getMin(), node.getMax());
+        }
+    }
+
+    /**
+     * Analyses a counted repetition of a group.
+     * @param info the info of the group.
+     * @param min the least number of repetitions.
+     * @param max the most number of repetitions, or -1 if there is no upper bound.
+     * @return the info of the repetition.
+     */
+    private static Info repeat(Info info, int min, int max) {
+        boolean exactly = max == min;
+        if (min == 0) {
+            return exactly ? Info.literal("") : Info.anything();
+        }
+
+        // the first few copies are enough to find the required trigrams
+        Info repeated = info;
+        for (int copy = 1; copy < Math.min(min, MAX_COPIES); copy++) {
+            repeated = repeated.concat(info);
+        }
+        if (!exactly || min > MAX_COPIES) {
+            repeated = repeated.concat(Info.anything());
+        }
+        return repeated;
+    }
+
+    /**
+     * What is known about the strings matched by part of a regex.
+     */
+    private static final class Info {
+
+        // the exact strings matched, or null if there are too many
+        private Set<String> exact;
+        // strings every match starts and ends with, used when exact is null
+        private Set<String> prefix;
+        private Set<String> suffix;
+        // a query every match satisfies, on top of the sets
+        private TrigramQuery match;
+
+        /**
+         * Constructs an Info.
+         * @param exact the exact strings, or null.
+         * @param prefix the prefixes, used when exact is null.
+         * @param suffix the suffixes, used when exact is null.
+         * @param match the query every match satisfies.
+         */
+        private Info(Set<String> exact, Set<String> prefix, Set<String> suffix, TrigramQuery match) {
+            this.exact = exact;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.match = match;
+            simplify();
+        }
+
+        /**
+         * The info for a part that can match anything, like a starred group.
+         * @return the info.
+         */
+        static Info anything() {
+            return new Info(null, setOf(""), setOf(""), all());
+        }
+
+        /**
+         * The info for a part that matches exactly one string.
+         * @param string the string.
+         * @return the info.
+         */
+        static Info literal(String string) {
+            return new Info(setOf(string), null, null, all());
+        }
+
+        /**
+         * Gets the info for this part followed by another.
+         * @param next the part that follows.
+         * @return the info of the concatenation.
+         */
+        Info concat(Info next) {
+            TrigramQuery combined = match.and(next.match);
+            if (exact != null && next.exact != null) {
+                return new Info(cross(exact, next.exact), null, null, combined);
+            }
+
+            // the trigrams spanning the two parts are only known while the sets are small
+            Set<String> leftSuffix = exact != null ? exact : suffix;
+            Set<String> rightPrefix = next.exact != null ? next.exact : next.prefix;
+            if (leftSuffix.size() * rightPrefix.size() <= MAX_SET_SIZE) {
+                combined = combined.and(anyOf(cross(leftSuffix, rightPrefix)));
+            }
+            Set<String> newPrefix = exact != null ? cross(exact, next.prefix) : prefix;
+            Set<String> newSuffix = next.exact != null ? cross(suffix, next.exact) : next.suffix;
+            if (exact == null) {
+                combined = combined.and(anyOf(suffix));
+            }
+            if (next.exact == null) {
+                combined = combined.and(anyOf(next.prefix));
+            }
+            return new Info(null, newPrefix, newSuffix, combined);
+        }
+
+        /**
+         * Gets the info for either this part or another.
+         * @param other the other part.
+         * @return the info of the union.
+         */
+        Info union(Info other) {
+            if (exact != null && other.exact != null) {
+                Set<String> strings = new HashSet<String>(exact);
+                strings.addAll(other.exact);
+                return new Info(strings, null, null, match.or(other.match));
+            }
+            Set<String> newPrefix = new HashSet<String>(exact != null ? exact : prefix);
+            newPrefix.addAll(other.exact != null ? other.exact : other.prefix);
+            Set<String> newSuffix = new HashSet<String>(exact != null ? exact : suffix);
+            newSuffix.addAll(other.exact != null ? other.exact : other.suffix);
+            return new Info(null, newPrefix, newSuffix, toQuery().or(other.toQuery()));
+        }
+
+        /**
+         * Gets the info for this part or the empty string.
+         * @return the info of the optional part.
+         */
+        Info optional() {
+            if (exact != null) {
+                Set<String> strings = new HashSet<String>(exact);
+                strings.add("");
+                return new Info(strings, null, null, all());
+            }
+            return anything();
+        }
+
+        /**
+         * Gets the query every match satisfies.
+         * @return the query.
+         */
+        TrigramQuery toQuery() {
+            if (exact != null) {
+                return match.and(anyOf(exact));
+            }
+            return match.and(anyOf(prefix)).and(anyOf(suffix));
+        }
+
+        /**
+         * Keeps the sets small, moving what they require into the match query before shrinking them.
+         */
+        private void simplify() {
+            if (exact != null && exact.size() > MAX_SET_SIZE) {
+                match = match.and(anyOf(exact));
+                prefix = exact;
+                suffix = exact;
+                exact = null;
+            }
+            if (exact == null) {
+                prefix = shrink(prefix, true);
+                suffix = shrink(suffix, false);
+            }
+        }
+
+        /**
+         * Shrinks a prefix or suffix set, moving its trigrams into the match query first.
+         * @param strings the set.
+         * @param isPrefix true to keep the starts of the strings, false to keep their ends.
+         * @return the smaller set.
+         */
+        private Set<String> shrink(Set<String> strings, boolean isPrefix) {
+            if (strings.size() <= MAX_SET_SIZE) {
+                return strings;
+            }
+            match = match.and(anyOf(strings));
+
+            // a shorter start or end of every string is still a start or end of every match
+            Set<String> trimmed = new HashSet<String>();
+            for (String string : strings) {
+                int keep = Math.min(string.length(), TRIGRAM_LENGTH - 1);
+                trimmed.add(isPrefix ? string.substring(0, keep) : string.substring(string.length() - keep));
+            }
+            return trimmed.size() <= MAX_SET_SIZE ? trimmed : setOf("");
+        }
+
+        /**
+         * Gets every concatenation of a string from one set with a string from another.
+         * @param first the first set.
+         * @param second the second set.
+         * @return the concatenations.
+         */
+        private static Set<String> cross(Set<String> first, Set<String> second) {
+            Set<String> strings = new HashSet<String>();
+            for (String a : first) {
+                for (String b : second) {
+                    strings.add(a + b);
+                }
+            }
+            return strings;
+        }
+
+        /**
+         * Gets a set of one string.
+         * @param string the string.
+         * @return the set.
+         */
+        private static Set<String> setOf(String string) {
+            Set<String> strings = new HashSet<String>();
+            strings.add(string);
+            return strings;
+        }
+    }
+}
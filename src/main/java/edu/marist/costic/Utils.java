@@ -1,14 +1,17 @@
 package edu.marist.costic;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -22,19 +25,47 @@ import org.apache.commons.cli.ParseException;
  */
 public class Utils {
 
+    private static final int HEX_RADIX = 16;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
     // input and output files for the program
     private File inputFile;
     private File nfaDotFile;
     private File dfaDotFile;
+    private boolean dfaDotRequested;
+    private File tableFile;
+    private File indexFile;
 
     private String regex;
+    // the input has to match any of patterns, all of andPatterns and none of notPatterns
+    private List<String> patterns;
+    private List<String> andPatterns;
+    private List<String> notPatterns;
     private List<String> inputStrings;
     private Set<Character> alphabet;
     private boolean verbose;
+    private boolean follow;
+    private boolean compressed;
+    private Engine engine;
+    private boolean offHeap;
+    private int maxStates;
+    private RecordDelimiter recordDelimiter;
+    private String recordTerminator;
+    private boolean indexCommand;
 
+    /**
+     * Constructs a Utils with the defaults used when no options are given.
+     */
     public Utils() {
         inputStrings = new ArrayList<String>();
+        patterns = new ArrayList<String>();
+        andPatterns = new ArrayList<String>();
+        notPatterns = new ArrayList<String>();
         alphabet = new HashSet<Character>();
+        engine = Engine.TABLE;
+        maxStates = CONSTANTS.getMaxNFAStates();
+        recordDelimiter = RecordDelimiter.newline();
+        recordTerminator = recordDelimiter.getTerminator();
     }
 
     /**
@@ -45,6 +76,30 @@ public class Utils {
         return regex;
     }
 
+    /**
+     * Getter for the regexes of which the input has to match any, the first is the main regex.
+     * @return the list of regex strings
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Getter for the regexes the input also has to match.
+     * @return the list of regex strings
+     */
+    public List<String> getAndPatterns() {
+        return andPatterns;
+    }
+
+    /**
+     * Getter for the regexes the input must not match.
+     * @return the list of regex strings
+     */
+    public List<String> getNotPatterns() {
+        return notPatterns;
+    }
+
     /**
      * Getter for the list of input strings.
      * @return the list of input strings
@@ -53,6 +108,94 @@ public class Utils {
         return inputStrings;
     }
 
+    /**
+     * Getter for the input file.
+     * @return the input file
+     */
+    public File getInputFile() {
+        return inputFile;
+    }
+
+    /**
+     * Getter for follow mode.
+     * @return true if the input file should be followed as it grows
+     */
+    public boolean isFollow() {
+        return follow;
+    }
+
+    /**
+     * Getter for compressed input.
+     * @return true if the input file is gzip or zlib compressed
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Getter for the matching engine.
+     * @return the engine to run the DFA on
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Getter for off heap table storage.
+     * @return true if the DFA transition table should be stored outside of the heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Getter for the table file.
+     * @return the file to memory map the DFA transition table from, or null if none was specified
+     */
+    public File getTableFile() {
+        return tableFile;
+    }
+
+    /**
+     * Getter for whether a DFA dot file was given.
+     * @return true if the DFA has to be written out even when the engine doesn't need it
+     */
+    public boolean isDFADotRequested() {
+        return dfaDotRequested;
+    }
+
+    /**
+     * Getter for the index file.
+     * @return the trigram index file to write or search with, or null if none was specified
+     */
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Getter for the index command.
+     * @return true if a trigram index of the input file should be built instead of matching it
+     */
+    public boolean isIndexCommand() {
+        return indexCommand;
+    }
+
+    /**
+     * Getter for the NFA size limit.
+     * @return the most states counted repetitions may expand an NFA to
+     */
+    public int getMaxStates() {
+        return maxStates;
+    }
+
+    /**
+     * Getter for the record delimiter.
+     * @return how the input is split into records
+     */
+    public RecordDelimiter getRecordDelimiter() {
+        return recordDelimiter;
+    }
+
     /**
      * Getter for the file alphabet.
      * @return the alphabet of the input file
@@ -85,6 +228,22 @@ public class Utils {
         options.addOption("h", false, "Display this help text");
         options.addOption("n", true, "The dot file to write the NFA to");
         options.addOption("d", true, "The dot file the write the DFA to");
+        options.addOption("e", true, "A regex to match, repeat to match lines matching any of them");
+        options.addOption("a", "and", true, "A regex lines must also match, can be repeated");
+        options.addOption("x", "not", true, "A regex lines must not match, can be repeated");
+        options.addOption("l", "max-states", true, "The most states counted repetitions may expand an NFA to, "
+                + "default " + CONSTANTS.getMaxNFAStates());
+        options.addOption("E", "engine", true, "The matching engine: table (default), bytecode, shift-and or auto");
+        options.addOption("o", "off-heap", false, "Store the DFA transition table outside of the heap");
+        options.addOption("t", "table-file", true, "Memory map the DFA transition table from this file, "
+                + "building it first if it doesn't hold the table for the regex");
+        options.addOption("f", "follow", false, "Keep matching lines as they are appended to the input file");
+        options.addOption("r", "record-delimiter", true, "Split the input into records at this delimiter instead of "
+                + "at newlines, escapes \\n \\r \\t \\0 \\xHH and \\\\ are allowed. Unlike lines, records keep "
+                + "a \\r before the delimiter, so use \\r\\n for CRLF records");
+        options.addOption("R", "record-length", true, "Split the input into records of this many bytes");
+        options.addOption("i", "index", true, "Only match the blocks of the input file that this trigram index, "
+                + "built with the " + CONSTANTS.getIndexCommand() + " command, says may hold matches");
         return options;
     }
 
@@ -97,10 +256,17 @@ public class Utils {
     public CommandLine processArgs(final String[] args) {
         Options options = initOptions();
 
+        // the index command is only recognized as the very first argument, so a regex can still be "index" with -e
+        String[] optionArgs = args;
+        if (args.length > 0 && args[0].equals(CONSTANTS.getIndexCommand())) {
+            indexCommand = true;
+            optionArgs = Arrays.copyOfRange(args, 1, args.length);
+        }
+
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd = null;
         try {
-            cmd = parser.parse(options, args);
+            cmd = parser.parse(options, optionArgs);
         } catch (ParseException pe) {
             printHelpText(options);
             error("Error parsing command line: " + pe.getMessage());
@@ -108,7 +274,7 @@ public class Utils {
 
         if (cmd.hasOption("h")) {
             printHelpText(options);
-            System.exit(0);
+            exit(0);
         }
 
         if (cmd.hasOption("v")) {
@@ -119,22 +285,114 @@ public class Utils {
             verbose = true;
         }
 
+        if (cmd.hasOption("E")) {
+            try {
+                engine = Engine.valueOf(cmd.getOptionValue("E").toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                error("Unknown engine: " + cmd.getOptionValue("E"));
+            }
+        }
+
+        if (cmd.hasOption("l")) {
+            try {
+                maxStates = Integer.parseInt(cmd.getOptionValue("l"));
+            } catch (NumberFormatException e) {
+                error("Invalid NFA size limit: " + cmd.getOptionValue("l"));
+            }
+        }
+
+        if (cmd.hasOption("r") && cmd.hasOption("R")) {
+            error("Only one of a record delimiter and a record length can be given");
+        } else if (cmd.hasOption("r")) {
+            try {
+                recordDelimiter = RecordDelimiter.of(parseDelimiter(cmd.getOptionValue("r")));
+            } catch (IllegalArgumentException e) {
+                error("Invalid record delimiter: " + e.getMessage());
+            }
+        } else if (cmd.hasOption("R")) {
+            try {
+                recordDelimiter = RecordDelimiter.fixedLength(Integer.parseInt(cmd.getOptionValue("R")));
+            } catch (IllegalArgumentException e) {
+                error("Invalid record length: " + cmd.getOptionValue("R"));
+            }
+        }
+        recordTerminator = recordDelimiter.getTerminator();
+
+        offHeap = cmd.hasOption("o");
+        if (cmd.hasOption("t")) {
+            tableFile = new File(cmd.getOptionValue("t"));
+        }
+
         nfaDotFile = new File(cmd.getOptionValue("n", CONSTANTS.getDefaultNFAFile()));
         dfaDotFile = new File(cmd.getOptionValue("d", CONSTANTS.getDefaultDFAFile()));
+        dfaDotRequested = cmd.hasOption("d");
 
         String[] otherArgs = cmd.getArgs();
+        if (cmd.hasOption("i")) {
+            indexFile = new File(cmd.getOptionValue("i"));
+        }
+
+        if (indexCommand) {
+            // only the file to index is expected
+            if (otherArgs.length != 1) {
+                error("Need one argument for the file to index");
+            }
+            inputFile = new File(otherArgs[0]);
+            if (indexFile == null) {
+                indexFile = new File(otherArgs[0] + CONSTANTS.getIndexExtension());
+            }
+            return cmd;
+        }
+
+        if (cmd.hasOption("e")) {
+            // the regexes were given as options, so make sure there is exactly 1 more argument
+            if (otherArgs.length < 1) {
+                error("Missing arguments. Need one argument for input file");
+            } else if (otherArgs.length > 1) {
+                error("Too many arguments. Need one argument for input file");
+            }
 
-        // make sure there is exactly 2 more arguments
-        if (otherArgs.length < 2) {
-            error("Missing arguments. Need one argument for regex and one for input file");
-        } else if (otherArgs.length > 2) {
-            error("Too many arguments. Need one argument for regex and one for input file");
+            patterns.addAll(Arrays.asList(cmd.getOptionValues("e")));
+            inputFile = new File(otherArgs[0]);
+        } else {
+            // make sure there is exactly 2 more arguments
+            if (otherArgs.length < 2) {
+                error("Missing arguments. Need one argument for regex and one for input file");
+            } else if (otherArgs.length > 2) {
+                error("Too many arguments. Need one argument for regex and one for input file");
+            }
+
+            patterns.add(otherArgs[0]);
+            inputFile = new File(otherArgs[1]);
         }
+        regex = patterns.get(0);
 
-        regex = otherArgs[0];
-        inputFile = new File(otherArgs[1]);
+        if (cmd.hasOption("a")) {
+            andPatterns.addAll(Arrays.asList(cmd.getOptionValues("a")));
+        }
+        if (cmd.hasOption("x")) {
+            notPatterns.addAll(Arrays.asList(cmd.getOptionValues("x")));
+        }
 
-        processInput();
+        // a followed, compressed or indexed file is streamed later, so it is not loaded up front
+        if (cmd.hasOption("f")) {
+            if (indexFile != null) {
+                error("An index can't be used to follow a file");
+            }
+            follow = true;
+        } else {
+            try {
+                compressed = DecompressionPipeline.isCompressed(inputFile);
+            } catch (IOException e) {
+                error(e.getMessage());
+            }
+
+            if (compressed && indexFile != null) {
+                error("An index can't be used with a compressed file");
+            } else if (!compressed && indexFile == null) {
+                processInput();
+            }
+        }
 
         return cmd;
     }
@@ -143,24 +401,98 @@ public class Utils {
      * Process the input file to create the list of input strings and the alphabet.
      */
     private void processInput() {
-        try {
-            Scanner scan = new Scanner(inputFile);
+        RecordSplitter splitter = new RecordSplitter(recordDelimiter, record -> {
+            // add the next record to the list of input
+            inputStrings.add(record);
 
-            while (scan.hasNextLine()) {
-                String nextLine = scan.nextLine();
+            // add the characters of the record to the alphabet set
+            for (int i = 0; i < record.length(); i++) {
+                alphabet.add(record.charAt(i));
+            }
+        });
 
-                // add the next line to the list of input
-                inputStrings.add(nextLine);
+        try (InputStream in = new FileInputStream(inputFile)) {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                splitter.feed(buffer, 0, read);
+            }
+            splitter.flush();
+        } catch (IOException e) {
+            error(e.getMessage());
+        }
+    }
 
-                // add the characters of the line to the alphabet set
-                for (char c : nextLine.toCharArray()) {
-                    alphabet.add(c);
-                }
+    /**
+     * Turns the escapes in a record delimiter given on the command line into the bytes they stand for.
+     * @param delimiter the delimiter as typed.
+     * @return the delimiter bytes.
+     */
+    private static byte[] parseDelimiter(String delimiter) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < delimiter.length()) {
+            int start = i;
+            while (i < delimiter.length() && delimiter.charAt(i) != '\\') {
+                i++;
+            }
+            byte[] text = delimiter.substring(start, i).getBytes(StandardCharsets.UTF_8);
+            bytes.write(text, 0, text.length);
+            if (i == delimiter.length()) {
+                break;
             }
-            scan.close();
 
-        } catch (FileNotFoundException e) {
-            error(e.getMessage());
+            // skip the backslash and decode the escape after it
+            i++;
+            if (i == delimiter.length()) {
+                throw new IllegalArgumentException("Trailing backslash");
+            }
+            char escape = delimiter.charAt(i++);
+            switch (escape) {
+                case 'n':
+                    bytes.write('\n');
+                    break;
+                case 'r':
+                    bytes.write('\r');
+                    break;
+                case 't':
+                    bytes.write('\t');
+                    break;
+                case '0':
+                    bytes.write(0);
+                    break;
+                case '\\':
+                    bytes.write('\\');
+                    break;
+                case 'x':
+                    if (i + 2 > delimiter.length()) {
+                        throw new IllegalArgumentException("Incomplete \\x escape");
+                    }
+                    int high = Character.digit(delimiter.charAt(i), HEX_RADIX);
+                    int low = Character.digit(delimiter.charAt(i + 1), HEX_RADIX);
+                    if (high < 0 || low < 0) {
+                        throw new IllegalArgumentException("Invalid \\x escape");
+                    }
+                    bytes.write(high * HEX_RADIX + low);
+                    i += 2;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown escape \\" + escape);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Prints an accepted record followed by the record terminator, so the output is split like the input.
+     * @param record the record to print
+     */
+    public void printRecord(String record) {
+        System.out.print(record);
+        System.out.print(recordTerminator);
+        // the output is only flushed at exit, but a followed file never ends and its records are shown as they come
+        if (follow) {
+            System.out.flush();
         }
     }
 
@@ -211,7 +543,7 @@ public class Utils {
      */
     public static void error(final String msg, final int returnCode) {
         System.err.println(msg);
-        System.exit(returnCode);
+        exit(returnCode);
     }
 
     /**
@@ -222,6 +554,16 @@ public class Utils {
      */
     public static void error(final String msg) {
         System.err.println(msg);
-        System.exit(-1);
+        exit(-1);
+    }
+
+    /**
+     * Exit helper method to write out the buffered output before exiting with a return code.
+     *
+     * @param returnCode Return code to exit with
+     */
+    public static void exit(final int returnCode) {
+        System.out.flush();
+        System.exit(returnCode);
     }
 }
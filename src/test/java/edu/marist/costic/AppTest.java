@@ -1,9 +1,25 @@
 package edu.marist.costic;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 /**
  * Unit test for hello world App template.
@@ -24,4 +40,59 @@ class AppTest {
     void testAppVersion() {
         assertNotEquals(CONSTANTS.getVersion(), "0.0.0");
     }
+
+    /**
+     * A file holding spaces has the same records accepted whether it is read as a plain file, decompressed
+     * or searched through its trigram index.
+     */
+    @Test
+    void testSameMatchesHoweverRead(@TempDir Path directory) throws IOException, InvalidRegexException {
+        String text = "ab\na b\nab c\nabc d\naabb\nc\n b \nabcd\nba\n";
+        File file = directory.resolve("input.txt").toFile();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        File gzip = directory.resolve("input.gz").toFile();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+        Files.write(gzip.toPath(), bytes.toByteArray());
+        File indexFile = directory.resolve("input.idx").toFile();
+        TrigramIndex.build(file, RecordDelimiter.newline(), indexFile);
+        TrigramIndex index = TrigramIndex.open(indexFile, file, RecordDelimiter.newline());
+        assertNotNull(index);
+
+        List<String> records = Arrays.asList(text.split("\n"));
+        Set<Character> alphabet = new HashSet<Character>();
+        for (char symbol : text.replace("\n", "").toCharArray()) {
+            alphabet.add(symbol);
+        }
+
+        for (String regex : new String[] {"ab", "a*b*", "abc d", "(a+b)*c", "abcd"}) {
+            DFA plain = new DFA(new NFA(regex, alphabet), alphabet);
+            List<String> expected = new ArrayList<String>();
+            for (String record : records) {
+                if (plain.matches(record)) {
+                    expected.add(record);
+                }
+            }
+
+            NFA nfa = App.createStreamedNFA(regex, CONSTANTS.getMaxNFAStates());
+            DFA streamed = new DFA(nfa, nfa.getAlphabet());
+            List<String> decompressed = new ArrayList<String>();
+            new DecompressionPipeline(gzip).run(new RecordSplitter(record -> {
+                if (streamed.matches(record)) {
+                    decompressed.add(record);
+                }
+            }));
+            assertEquals(expected, decompressed, regex);
+
+            List<String> indexed = new ArrayList<String>();
+            index.readBlocks(file, TrigramQuery.fromRegex(regex).candidates(index), new RecordSplitter(record -> {
+                if (streamed.matches(record)) {
+                    indexed.add(record);
+                }
+            }));
+            assertEquals(expected, indexed, regex);
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package edu.marist.costic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for transition tables stored outside of the heap.
+ */
+class BufferTransitionTableTest {
+    // a modification time far in the past, so rewriting the table file is noticed
+    private static final long OLD_TIME = 1000000000000L;
+
+    private static final String[] INPUTS = {"", "a", "c", "abc", "ababc", "abcc", "cab", "bbbbac", "abxc"};
+
+    /**
+     * The table file is mapped as it is for the same regex and alphabet, and rebuilt for any other.
+     */
+    @Test
+    void testTableFile(@TempDir Path directory) throws IOException, InvalidRegexException {
+        File tableFile = directory.resolve("table.dfa").toFile();
+        Set<Character> alphabet = alphabet("abc");
+        assertSameMatches(new DFA(new NFA("(a+b)*c", alphabet), alphabet, tableFile), "(a+b)*c", alphabet);
+        assertTrue(tableFile.setLastModified(OLD_TIME));
+
+        assertSameMatches(new DFA(new NFA("(a+b)*c", alphabet), alphabet, tableFile), "(a+b)*c", alphabet);
+        assertEquals(OLD_TIME, tableFile.lastModified());
+
+        assertSameMatches(new DFA(new NFA("(a+b)*cc", alphabet), alphabet, tableFile), "(a+b)*cc", alphabet);
+        assertNotEquals(OLD_TIME, tableFile.lastModified());
+
+        assertTrue(tableFile.setLastModified(OLD_TIME));
+        Set<Character> larger = alphabet("abcx");
+        assertSameMatches(new DFA(new NFA("(a+b)*cc", larger), larger, tableFile), "(a+b)*cc", larger);
+        assertNotEquals(OLD_TIME, tableFile.lastModified());
+    }
+
+    /**
+     * Off heap DFAs, built directly or copied from a product, accept the same inputs as heap DFAs.
+     */
+    @Test
+    void testOffHeap() throws InvalidRegexException {
+        Set<Character> alphabet = alphabet("abcx");
+        for (String regex : new String[] {"(a+b)*c", "a{0}", "(a+b)*a(a+b){3}", "x*(ab)?cc*"}) {
+            assertSameMatches(new DFA(new NFA(regex, alphabet), alphabet, true), regex, alphabet);
+        }
+
+        DFA heap = new DFA(new NFA("(a+b)*c", alphabet), alphabet)
+                .difference(new DFA(new NFA("ab*c", alphabet), alphabet));
+        DFA offHeap = heap.toOffHeap();
+        for (String input : INPUTS) {
+            assertEquals(heap.matches(input), offHeap.matches(input), input);
+        }
+        assertFalse(offHeap.matches("abc"));
+        assertTrue(offHeap.matches("bc"));
+    }
+
+    /**
+     * Builds an alphabet from the characters of a string.
+     * @param symbols the symbols.
+     * @return the alphabet.
+     */
+    private static Set<Character> alphabet(String symbols) {
+        Set<Character> alphabet = new HashSet<Character>();
+        for (char symbol : symbols.toCharArray()) {
+            alphabet.add(symbol);
+        }
+        return alphabet;
+    }
+
+    /**
+     * Checks that a DFA accepts the same inputs through every overload as the heap DFA of a regex.
+     * @param dfa the DFA to check.
+     * @param regex the regex it was built from.
+     * @param alphabet the alphabet it was built with.
+     */
+    private static void assertSameMatches(DFA dfa, String regex, Set<Character> alphabet)
+            throws InvalidRegexException {
+        DFA heap = new DFA(new NFA(regex, alphabet), alphabet);
+        for (String input : INPUTS) {
+            byte[] bytes = input.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(heap.matches(input), dfa.matches(input), input);
+            assertEquals(heap.matches(input), dfa.matches(bytes, 0, bytes.length), input);
+            assertEquals(heap.matches(input), dfa.matches(ByteBuffer.wrap(bytes)), input);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package edu.marist.costic;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the DFA automaton operations.
+ */
+class DFATest {
+    /**
+     * Creates the DFA of a regex over the symbols in the regex.
+     * @param regex the regex string.
+     * @return the DFA.
+     */
+    private static DFA dfa(String regex) throws InvalidRegexException {
+        NFA nfa = new NFA(regex);
+        return new DFA(nfa, nfa.getAlphabet());
+    }
+
+    /**
+     * Intersection, union and difference of DFAs with different alphabets.
+     */
+    @Test
+    void testProducts() throws InvalidRegexException {
+        DFA abs = dfa("(a+b)*");
+        DFA endsInB = dfa("(a+b+c)*b");
+
+        DFA intersection = abs.intersection(endsInB);
+        assertTrue(intersection.matches("aab"));
+        assertFalse(intersection.matches("acb"));
+        assertFalse(intersection.matches("aa"));
+
+        DFA union = abs.union(endsInB);
+        assertTrue(union.matches("aa"));
+        assertTrue(union.matches("acb"));
+        assertFalse(union.matches("ac"));
+
+        DFA difference = abs.difference(endsInB);
+        assertTrue(difference.matches("aa"));
+        assertTrue(difference.matches(""));
+        assertFalse(difference.matches("ab"));
+    }
+
+    /**
+     * A --not regex with a symbol the input doesn't have only rules out inputs that have it,
+     * so over the input alphabet it rules out nothing.
+     */
+    @Test
+    void testDifferenceOutsideAlphabet() throws InvalidRegexException {
+        Set<Character> input = new HashSet<Character>(Arrays.asList('a', 'b'));
+        DFA abs = new DFA(new NFA("a*b", input), input);
+        assertThrows(InvalidRegexException.class, () -> new NFA("a*z", input));
+
+        DFA difference = abs.difference(dfa("a*z"));
+        assertTrue(difference.matches("aab"));
+        assertTrue(difference.matches("b"));
+        assertFalse(difference.matches("aa"));
+        assertFalse(difference.matches("az"));
+    }
+
+    /**
+     * --and and --not regexes match a space in the input the same way the main regex does,
+     * whether or not they write one themselves.
+     */
+    @Test
+    void testProductsWithSpaces() throws InvalidRegexException {
+        Set<Character> input = new HashSet<Character>(Arrays.asList('a', 'b', ' '));
+        NFA ab = App.createStreamedNFA("ab", CONSTANTS.getMaxNFAStates());
+        NFA abs = App.createStreamedNFA("a*b*", CONSTANTS.getMaxNFAStates());
+
+        DFA intersection = new DFA(new NFA("ab", input), input).intersection(new DFA(abs, abs.getAlphabet()));
+        assertTrue(intersection.matches("ab"));
+        assertTrue(intersection.matches("a b"));
+        assertFalse(intersection.matches("b a"));
+
+        DFA difference = new DFA(new NFA("a*b*", input), input).difference(new DFA(ab, ab.getAlphabet()));
+        assertTrue(difference.matches("a bb"));
+        assertTrue(difference.matches("a a"));
+        assertFalse(difference.matches("a b"));
+        assertFalse(difference.matches("ba"));
+    }
+
+    /**
+     * The complement also accepts characters outside of the alphabet.
+     */
+    @Test
+    void testComplement() throws InvalidRegexException {
+        DFA complement = dfa("(a+b)*c").complement();
+        assertFalse(complement.matches("abc"));
+        assertTrue(complement.matches("ab"));
+        assertTrue(complement.matches("xyz"));
+        assertTrue(complement.matches("cc"));
+    }
+
+    /**
+     * States that skip ahead give the same results on every kind of input,
+     * including characters outside of the alphabet in the middle of a skipped run.
+     */
+    @Test
+    void testAcceleration() throws InvalidRegexException {
+        DFA needle = dfa("(a+b+c+d+e)*ace(a+b+c+d+e)*");
+        String haystack = "abdbdbabdbdbdbdbabdbdbdbdbdbbdbbbaceddddddddddddddddddddddddd";
+        assertTrue(needle.matches(haystack));
+        assertTrue(needle.matches(haystack.getBytes(StandardCharsets.US_ASCII), 0, haystack.length()));
+        assertTrue(needle.matches(ByteBuffer.wrap(haystack.getBytes(StandardCharsets.US_ASCII))));
+        assertFalse(needle.matches(haystack.replace("ace", "acd")));
+        assertFalse(needle.matches(haystack.replace("bbb", "bxb")));
+        byte[] shifted = ("x" + haystack.replace("ace", "acd")).getBytes(StandardCharsets.US_ASCII);
+        assertFalse(needle.matches(shifted, 1, haystack.length()));
+        assertTrue(needle.toOffHeap().matches(haystack.getBytes(StandardCharsets.US_ASCII), 0, haystack.length()));
+
+        // once "c" has been seen the complement rejects, and anything before it is skipped
+        DFA noC = dfa("(a+b)*c(a+b)*").complement();
+        assertTrue(noC.matches("abababababababababxyz"));
+        assertFalse(noC.matches("ababababababcabababab"));
+    }
+}
@@ -0,0 +1,138 @@
+package edu.marist.costic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for decompressing files on a producer thread.
+ */
+class DecompressionPipelineTest {
+    /**
+     * Compresses text into a file.
+     * @param file the file to write.
+     * @param text the text to compress.
+     * @param gzip true for the gzip format, false for zlib.
+     * @return the compressed bytes.
+     */
+    private static byte[] compress(File file, String text, boolean gzip) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(file.toPath(), bytes.toByteArray());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decompresses a file into its records.
+     * @param file the file to read.
+     * @return the records.
+     */
+    private static List<String> records(File file) throws IOException {
+        List<String> records = new ArrayList<String>();
+        new DecompressionPipeline(file).run(new RecordSplitter(records::add));
+        return records;
+    }
+
+    /**
+     * Gzip and zlib files are both recognized and decompressed.
+     */
+    @Test
+    void testFormats(@TempDir Path directory) throws IOException {
+        File gzip = directory.resolve("input.gz").toFile();
+        compress(gzip, "ab\nba\n", true);
+        assertTrue(DecompressionPipeline.isCompressed(gzip));
+        assertEquals(Arrays.asList("ab", "ba"), records(gzip));
+
+        File zlib = directory.resolve("input.z").toFile();
+        compress(zlib, "ab\nba\n", false);
+        assertTrue(DecompressionPipeline.isCompressed(zlib));
+        assertEquals(Arrays.asList("ab", "ba"), records(zlib));
+    }
+
+    /**
+     * An empty compressed stream has no records, and a stream cut off in the middle is an error.
+     */
+    @Test
+    void testEmptyAndTruncated(@TempDir Path directory) throws IOException {
+        File empty = directory.resolve("empty.gz").toFile();
+        compress(empty, "", true);
+        assertEquals(Collections.emptyList(), records(empty));
+
+        File truncated = directory.resolve("truncated.gz").toFile();
+        byte[] bytes = compress(truncated, "ab\nba\nab\nba\n", true);
+        Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> records(truncated));
+    }
+
+    /**
+     * Gzip data that can't be decompressed is an error instead of being read as plain text, since text doesn't start
+     * with the gzip magic number by chance.
+     */
+    @Test
+    void testCorruptGzip(@TempDir Path directory) throws IOException {
+        File file = directory.resolve("corrupt.gz").toFile();
+        byte[] bytes = compress(file, "ab\nba\n", true);
+        // keep the ten byte header and break the deflate data after it
+        Arrays.fill(bytes, 10, bytes.length, (byte) 0xFF);
+        Files.write(file.toPath(), bytes);
+        assertTrue(DecompressionPipeline.isCompressed(file));
+        assertThrows(IOException.class, () -> records(file));
+    }
+
+    /**
+     * Only zlib headers of deflate data with a valid window size are recognized, and text that happens to start
+     * with a valid header is read as it is.
+     */
+    @Test
+    void testPlainText(@TempDir Path directory) throws IOException {
+        File file = directory.resolve("input.txt").toFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write("x^ab\nba\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        assertTrue(DecompressionPipeline.isCompressed(file));
+        assertEquals(Arrays.asList("x^ab", "ba"), records(file));
+
+        // the right check, but compression method 9 and window size 8 aren't zlib
+        Files.write(file.toPath(), new byte[] {0x79, 0x18});
+        assertFalse(DecompressionPipeline.isCompressed(file));
+        Files.write(file.toPath(), new byte[] {(byte) 0x88, 0x1c});
+        assertFalse(DecompressionPipeline.isCompressed(file));
+    }
+
+    /**
+     * A record cut in two by the end of a ring buffer is put back together.
+     */
+    @Test
+    void testRecordAcrossBuffers(@TempDir Path directory) throws IOException {
+        // the decompressed buffers hold 64 KiB, so the second record starts in the first buffer and ends in the next
+        char[] first = new char[65530];
+        Arrays.fill(first, 'a');
+        char[] second = new char[20];
+        Arrays.fill(second, 'b');
+        File file = directory.resolve("input.gz").toFile();
+        compress(file, new String(first) + "\n" + new String(second) + "\nab\n", true);
+
+        assertEquals(Arrays.asList(new String(first), new String(second), "ab"), records(file));
+    }
+}
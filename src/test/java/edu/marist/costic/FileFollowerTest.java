@@ -0,0 +1,105 @@
+package edu.marist.costic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for following a growing file.
+ */
+class FileFollowerTest {
+    /**
+     * Appends text to a file.
+     * @param file the file.
+     * @param text the text to append.
+     */
+    private static void append(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Each poll reads only what was appended since the last one, a record cut off at the end of the file is
+     * finished by the next append, and after a truncation the file is read again from its beginning.
+     */
+    @Test
+    void testPoll(@TempDir Path directory) throws IOException {
+        File file = directory.resolve("input.txt").toFile();
+        Files.write(file.toPath(), "ab\nb".getBytes(StandardCharsets.US_ASCII));
+
+        List<String> records = new ArrayList<String>();
+        FileFollower follower = new FileFollower(file, new RecordSplitter(records::add), new Utils());
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        try {
+            assertTrue(follower.poll(buffer));
+            assertEquals(Arrays.asList("ab"), records);
+            assertFalse(follower.poll(buffer));
+
+            append(file, "a\nxyz\n");
+            assertTrue(follower.poll(buffer));
+            assertEquals(Arrays.asList("ab", "ba", "xyz"), records);
+            assertFalse(follower.poll(buffer));
+
+            // the partial record before the truncation is dropped
+            append(file, "partial");
+            assertTrue(follower.poll(buffer));
+            Files.write(file.toPath(), "q\n".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(follower.poll(buffer));
+            assertEquals(Arrays.asList("ab", "ba", "xyz", "q"), records);
+            assertFalse(follower.poll(buffer));
+        } finally {
+            follower.close();
+        }
+    }
+
+    /**
+     * A file truncated in place that has grown past the position read before the next poll is read again from its
+     * beginning, and a file renamed away is read to its end before the new file at its path is read.
+     */
+    @Test
+    void testRotation(@TempDir Path directory) throws IOException {
+        File file = directory.resolve("input.txt").toFile();
+        Files.write(file.toPath(), "ab\n".getBytes(StandardCharsets.US_ASCII));
+
+        List<String> records = new ArrayList<String>();
+        FileFollower follower = new FileFollower(file, new RecordSplitter(records::add), new Utils());
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        try {
+            assertTrue(follower.poll(buffer));
+            assertEquals(Arrays.asList("ab"), records);
+
+            // copied and truncated, then written again past the old position
+            Files.write(file.toPath(), "xyz\nba\n".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(follower.poll(buffer));
+            assertEquals(Arrays.asList("ab", "xyz", "ba"), records);
+            assertFalse(follower.poll(buffer));
+
+            // renamed with a last record still unread, then a new file is created in its place
+            append(file, "last");
+            Files.move(file.toPath(), directory.resolve("input.txt.1"));
+            assertTrue(follower.poll(buffer));
+            assertFalse(follower.poll(buffer));
+            Files.write(file.toPath(), "new\n".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(follower.poll(buffer));
+            assertEquals(Arrays.asList("ab", "xyz", "ba", "last"), records);
+            assertTrue(follower.poll(buffer));
+            assertEquals(Arrays.asList("ab", "xyz", "ba", "last", "new"), records);
+            assertFalse(follower.poll(buffer));
+        } finally {
+            follower.close();
+        }
+    }
+}
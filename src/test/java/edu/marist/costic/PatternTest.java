@@ -0,0 +1,152 @@
+package edu.marist.costic;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the Pattern library API.
+ */
+class PatternTest {
+    /**
+     * Whole inputs are matched against the compiled regex.
+     */
+    @Test
+    void testMatchesCharSequence() throws InvalidRegexException {
+        Pattern pattern = Pattern.compile("(a+b)*c");
+        assertTrue(pattern.matches("ababc"));
+        assertTrue(pattern.matches("c"));
+        assertFalse(pattern.matches("abab"));
+        assertFalse(pattern.matches("abxc"));
+        assertEquals("(a+b)*c", pattern.getRegex());
+    }
+
+    /**
+     * Byte slices are matched without looking outside of the slice.
+     */
+    @Test
+    void testMatchesBytes() throws InvalidRegexException {
+        Pattern pattern = Pattern.compile("(a+b)*c");
+        byte[] bytes = "xxababcxx".getBytes(StandardCharsets.US_ASCII);
+        assertTrue(pattern.matches(bytes, 2, 5));
+        assertFalse(pattern.matches(bytes, 2, 4));
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, 5);
+        assertTrue(pattern.matches(buffer));
+        assertEquals(2, buffer.position());
+    }
+
+    /**
+     * Invalid regexes are reported with an exception.
+     */
+    @Test
+    void testInvalidRegex() {
+        assertThrows(InvalidRegexException.class, () -> Pattern.compile("(a"));
+        assertThrows(InvalidRegexException.class, () -> Pattern.compile("a)"));
+        assertThrows(InvalidRegexException.class, () -> Pattern.compile("a+"));
+        assertThrows(InvalidRegexException.class, () -> Pattern.compile(""));
+    }
+
+    /**
+     * Optional groups and counted repetitions.
+     */
+    @Test
+    void testRepetition() throws InvalidRegexException {
+        Pattern exactly = Pattern.compile("(a+b){3}");
+        assertTrue(exactly.matches("aba"));
+        assertFalse(exactly.matches("ab"));
+        assertFalse(exactly.matches("abab"));
+
+        Pattern atLeast = Pattern.compile("a{2,}b?");
+        assertTrue(atLeast.matches("aa"));
+        assertTrue(atLeast.matches("aaaab"));
+        assertFalse(atLeast.matches("ab"));
+
+        Pattern between = Pattern.compile("(ab){1,3}");
+        assertTrue(between.matches("ab"));
+        assertTrue(between.matches("ababab"));
+        assertFalse(between.matches(""));
+        assertFalse(between.matches("abababab"));
+
+        Pattern nested = Pattern.compile("(a{2,}){0,}");
+        assertTrue(nested.matches(""));
+        assertTrue(nested.matches("aaaaa"));
+        assertFalse(nested.matches("a"));
+    }
+
+    /**
+     * Repetitions that would expand past the NFA size limit are rejected.
+     */
+    @Test
+    void testRepetitionLimit() {
+        assertThrows(InvalidRegexException.class, () -> new NFA("(ab){10}", 20));
+        assertThrows(InvalidRegexException.class, () -> Pattern.compile("a{3,2}"));
+        assertThrows(InvalidRegexException.class, () -> Pattern.compile("a{2"));
+    }
+
+    /**
+     * The Glushkov automaton accepts the same inputs as the DFA, and is only used for regexes it can hold.
+     */
+    @Test
+    void testShiftAnd() throws InvalidRegexException {
+        Pattern pattern = Pattern.compile("(a+b)*a(a+b){2,}c?", Engine.SHIFT_AND);
+        assertTrue(pattern.matches("babaab"));
+        assertTrue(pattern.matches("aabc"));
+        assertFalse(pattern.matches("ab"));
+        assertFalse(pattern.matches("bab"));
+        assertFalse(pattern.matches("aabcc"));
+        byte[] bytes = "xaabx".getBytes(StandardCharsets.US_ASCII);
+        assertTrue(pattern.matches(bytes, 1, 3));
+        assertTrue(pattern.matches(ByteBuffer.wrap(bytes, 1, 3)));
+        assertFalse(pattern.matches(bytes, 0, 4));
+
+        assertNotNull(ShiftAndMatcher.compile(new NFA("a{64}")));
+        assertNull(ShiftAndMatcher.compile(new NFA("a{65}")));
+        assertNull(ShiftAndMatcher.compile(new NFA("a b")));
+        // too long for a long, so it falls back to the table
+        assertTrue(Pattern.compile("a{65}", Engine.SHIFT_AND).matches(new String(new char[65]).replace('\0', 'a')));
+    }
+
+    /**
+     * The generated matcher accepts the same inputs as the table DFA through every overload,
+     * including a DFA with a single state and one too large to generate code for.
+     */
+    @Test
+    void testBytecode() throws InvalidRegexException {
+        String[] inputs = {"", "a", "b", "c", "ababc", "abxc", "abab", "ab c", "aaaaaaaaaa", "baaaaaaaaaa",
+            "bbbbbbbabbbbbbbbb", "abababababa"};
+        assertSameMatches("(a+b)*c", inputs);
+
+        assertEquals(1, new DFA(new NFA("a{0}"), new NFA("a{0}").getAlphabet()).getStateCount());
+        assertSameMatches("a{0}", inputs);
+
+        NFA large = new NFA("(a+b)*a(a+b){9}");
+        assertNull(MatcherGenerator.generate(new DFA(large, large.getAlphabet())));
+        assertSameMatches("(a+b)*a(a+b){9}", inputs);
+    }
+
+    /**
+     * Checks that the bytecode engine and the table DFA agree on every overload of matches.
+     * @param regex the regex to compile.
+     * @param inputs the inputs to match.
+     */
+    private static void assertSameMatches(String regex, String[] inputs) throws InvalidRegexException {
+        Pattern table = Pattern.compile(regex, Engine.TABLE);
+        Pattern bytecode = Pattern.compile(regex, Engine.BYTECODE);
+        for (String input : inputs) {
+            boolean expected = table.matches(input);
+            byte[] bytes = ("x" + input + "x").getBytes(StandardCharsets.US_ASCII);
+            assertEquals(expected, bytecode.matches(input), input);
+            assertEquals(expected, bytecode.matches(bytes, 1, input.length()), input);
+            assertEquals(expected, bytecode.matches(ByteBuffer.wrap(bytes, 1, input.length())), input);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package edu.marist.costic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for splitting input into records.
+ */
+class RecordSplitterTest {
+    /**
+     * Splits text fed a few bytes at a time, so records and delimiters are cut across chunks.
+     * @param delimiter how to split the text.
+     * @param text the text to split.
+     * @return the records.
+     */
+    private static List<String> split(RecordDelimiter delimiter, String text) {
+        List<String> records = new ArrayList<String>();
+        RecordSplitter splitter = new RecordSplitter(delimiter, records::add);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += 3) {
+            splitter.feed(bytes, i, Math.min(3, bytes.length - i));
+        }
+        splitter.flush();
+        return records;
+    }
+
+    /**
+     * Lines end at a newline, with or without a carriage return before it.
+     */
+    @Test
+    void testNewline() {
+        assertEquals(Arrays.asList("ab", "", "ba", "b"), split(RecordDelimiter.newline(), "ab\r\n\nba\nb"));
+    }
+
+    /**
+     * Single and multi-byte delimiters, including a trailing part of a delimiter at the end of the input.
+     */
+    @Test
+    void testDelimiter() {
+        assertEquals(Arrays.asList("abab", "", "b"), split(RecordDelimiter.of("\0"), "abab\0\0b\0"));
+        assertEquals(Arrays.asList("a\nb", "ba\nab", "b"), split(RecordDelimiter.of("\n\n"), "a\nb\n\nba\nab\n\nb\n"));
+        assertEquals(Arrays.asList("aab", "ba"), split(RecordDelimiter.of("abba"), "aababbabaabba"));
+    }
+
+    /**
+     * Fixed length records, with a shorter last record.
+     */
+    @Test
+    void testFixedLength() {
+        assertEquals(Arrays.asList("abba", "bbab", "a"), split(RecordDelimiter.fixedLength(4), "abbabbaba"));
+    }
+}
@@ -0,0 +1,76 @@
+package edu.marist.costic;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for simplifying the syntax tree of a regex.
+ */
+class RegexOptimizerTest {
+    /**
+     * Parses and simplifies a regex over the symbols in the regex.
+     * @param regex the regex string.
+     * @return the simplified regex string.
+     */
+    private static String optimize(String regex) throws InvalidRegexException {
+        Set<Character> alphabet = new HashSet<Character>();
+        return RegexOptimizer.optimize(RegexParser.parse(regex, alphabet, true), alphabet).toString();
+    }
+
+    /**
+     * Nested stars and groups are flattened, repeated arms removed and shared starts factored out.
+     */
+    @Test
+    void testSimplify() throws InvalidRegexException {
+        assertEquals("a*", optimize("((a)*)*"));
+        assertEquals("a*", optimize("(a?)*"));
+        assertEquals("(a+b)*", optimize("(a*+b)*"));
+        assertEquals("abc", optimize("a(bc)"));
+        assertEquals("a+b", optimize("a+(b+a)"));
+        assertEquals("ab(c+d)", optimize("abc+abd"));
+        assertEquals("abc?", optimize("abc+ab"));
+        assertEquals("b", optimize("a{0}b"));
+        // the epsilon symbol matches through the transitions around it, so its regex is kept as written
+        assertEquals("( a)*", optimize("(( a)*)"));
+    }
+
+    /**
+     * The NFA is built from the smaller tree and still matches the same strings.
+     */
+    @Test
+    void testNodeCounts() throws InvalidRegexException {
+        NFA nfa = new NFA("abc+abd");
+        assertEquals(9, nfa.getParsedNodeCount());
+        assertEquals(6, nfa.getOptimizedNodeCount());
+
+        Pattern pattern = Pattern.compile("abc+abd");
+        assertTrue(pattern.matches("abc"));
+        assertTrue(pattern.matches("abd"));
+        assertFalse(pattern.matches("ab"));
+    }
+
+    /**
+     * A space in the input is matched through the epsilon transitions of the NFA, so over an alphabet holding it
+     * the tree is kept as written and the regex matches the same lines as it did before simplifying.
+     */
+    @Test
+    void testSpaceInAlphabet() throws InvalidRegexException {
+        Set<Character> alphabet = new HashSet<Character>(Arrays.asList('a', 'b', 'c', ' '));
+        RegexNode tree = RegexParser.parse("((b)*)*", alphabet, false);
+        assertEquals(tree, RegexOptimizer.optimize(tree, alphabet));
+        assertEquals("b*", optimize("((b)*)*"));
+
+        Pattern union = Pattern.compile("a+b+b", alphabet);
+        assertTrue(union.matches("b  "));
+        assertTrue(union.matches("a"));
+        assertTrue(Pattern.compile("((a+b)*)*", alphabet).matches("  "));
+        assertTrue(Pattern.compile("(aa)ca+acb", alphabet).matches(" acb "));
+    }
+}
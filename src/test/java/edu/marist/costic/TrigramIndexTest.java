@@ -0,0 +1,95 @@
+package edu.marist.costic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for the trigram index and the queries derived from regexes.
+ */
+class TrigramIndexTest {
+    /**
+     * Literal runs become trigrams, and parts that can match anything rule nothing out.
+     */
+    @Test
+    void testQuery() {
+        assertEquals("(\"abc\" AND \"bcd\")", TrigramQuery.fromRegex("abcd").toString());
+        assertEquals("\"abc\"", TrigramQuery.fromRegex("(x+y)*abc(x+y)*").toString());
+        assertEquals("ALL", TrigramQuery.fromRegex("(a+b)*").toString());
+        assertEquals("ALL", TrigramQuery.fromRegex("ab?c").toString());
+    }
+
+    /**
+     * Only the block holding the trigrams of a match is read, and a changed file makes the index out of date.
+     */
+    @Test
+    void testCandidateBlocks(@TempDir Path directory) throws IOException {
+        File file = directory.resolve("input.txt").toFile();
+        File indexFile = directory.resolve("input.idx").toFile();
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            // enough short lines to fill the first block, then a line only the last block holds
+            for (int i = 0; i < 40000; i++) {
+                writer.print("ab\n");
+            }
+            writer.print("xyz\n");
+        }
+
+        int blocks = TrigramIndex.build(file, RecordDelimiter.newline(), indexFile);
+        TrigramIndex index = TrigramIndex.open(indexFile, file, RecordDelimiter.newline());
+        assertNotNull(index);
+        assertEquals(blocks, index.getBlockCount());
+
+        BitSet candidates = TrigramQuery.fromRegex("xyz").candidates(index);
+        assertEquals(1, candidates.cardinality());
+        assertEquals(blocks - 1, candidates.nextSetBit(0));
+
+        List<String> records = new ArrayList<String>();
+        index.readBlocks(file, candidates, new RecordSplitter(records::add));
+        assertEquals(Collections.singletonList("xyz"), records.subList(records.size() - 1, records.size()));
+
+        assertNull(TrigramIndex.open(indexFile, file, RecordDelimiter.of("\0")));
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.print("changed\n");
+        }
+        assertNull(TrigramIndex.open(indexFile, file, RecordDelimiter.newline()));
+    }
+
+    /**
+     * Spaces are left out of the trigrams of both the index and the query, since a space can match where the regex
+     * doesn't write it.
+     */
+    @Test
+    void testEpsilonQuery(@TempDir Path directory) throws IOException, InvalidRegexException {
+        assertEquals("(\"abc\" AND \"bcd\")", TrigramQuery.fromRegex("abc d").toString());
+
+        File file = directory.resolve("input.txt").toFile();
+        File indexFile = directory.resolve("input.idx").toFile();
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.print("ab c d\n");
+        }
+        TrigramIndex.build(file, RecordDelimiter.newline(), indexFile);
+        TrigramIndex index = TrigramIndex.open(indexFile, file, RecordDelimiter.newline());
+        assertNotNull(index);
+
+        Pattern pattern = Pattern.compile("abc d");
+        List<String> matches = new ArrayList<String>();
+        index.readBlocks(file, TrigramQuery.fromRegex("abc d").candidates(index), new RecordSplitter(record -> {
+            if (pattern.matches(record)) {
+                matches.add(record);
+            }
+        }));
+        assertEquals(Collections.singletonList("ab c d"), matches);
+    }
+}